@@ -0,0 +1,313 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * AsmWriter
+ *
+ * Destination for the assembly that {@link Codegen} formats. Text is
+ * appended to a reusable char buffer (ints and padding are written in
+ * place, without building intermediate strings) and handed on in large
+ * chunks: encoded straight into a {@link WritableByteChannel} such as the
+ * FileChannel of the output file, or written to a Writer when the caller
+ * supplied one (the compile server, the benchmarks). An AsmWriter made
+ * with no destination keeps everything in memory instead, until it is
+ * copied to another one by {@link #writeTo}.
+ *
+ * Like PrintWriter, an AsmWriter never throws; the first I/O error is
+ * remembered and reported by {@link #checkError}.
+ */
+public class AsmWriter {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final char[] SPACES = new char[64];
+	static {
+		java.util.Arrays.fill(SPACES, ' ');
+	}
+
+	private char[] buf;
+	private int pos = 0;
+
+	// at most one of channel and writer is non-null; with neither, the
+	// buffer grows to hold everything
+	private WritableByteChannel channel;
+	private Writer writer;
+	private CharsetEncoder encoder;
+	private ByteBuffer bytes;
+
+	private IOException error;
+	private boolean closed = false;
+
+	/**
+	 * Collects text in memory.
+	 */
+	public AsmWriter() {
+		buf = new char[1 << 10];
+	}
+
+	/**
+	 * Writes UTF-8 to channel, which is closed by {@link #close}.
+	 */
+	public AsmWriter(WritableByteChannel channel) {
+		this.channel = channel;
+		buf = new char[BUFFER_SIZE];
+		encoder = Charset.forName("UTF-8").newEncoder();
+		bytes = ByteBuffer.allocate(BUFFER_SIZE * 2);
+	}
+
+	/**
+	 * Writes to writer, which is closed by {@link #close}.
+	 */
+	public AsmWriter(Writer writer) {
+		this.writer = writer;
+		buf = new char[BUFFER_SIZE];
+	}
+
+	public AsmWriter append(String s) {
+		return append(s, 0, s.length());
+	}
+
+	/**
+	 * Appends the chars of s from start up to (not including) end.
+	 */
+	public AsmWriter append(String s, int start, int end) {
+		int len = end - start;
+		if (len > buf.length - pos && inMemory()) {
+			grow(len);
+		}
+		int k = start;
+		while (true) {
+			int n = Math.min(buf.length - pos, end - k);
+			s.getChars(k, k + n, buf, pos);
+			pos += n;
+			k += n;
+			if (k == end) {
+				return this;
+			}
+			flushBuffer();
+		}
+	}
+
+	public AsmWriter append(char[] chars, int offset, int len) {
+		if (len > buf.length - pos && inMemory()) {
+			grow(len);
+		}
+		int k = 0;
+		while (true) {
+			int n = Math.min(buf.length - pos, len - k);
+			System.arraycopy(chars, offset + k, buf, pos, n);
+			pos += n;
+			k += n;
+			if (k == len) {
+				return this;
+			}
+			flushBuffer();
+		}
+	}
+
+	public AsmWriter append(char c) {
+		if (pos == buf.length) {
+			makeRoom(1);
+		}
+		buf[pos++] = c;
+		return this;
+	}
+
+	/**
+	 * Appends the decimal representation of n.
+	 */
+	public AsmWriter append(int n) {
+		if (n == Integer.MIN_VALUE) {
+			return append(Integer.toString(n));
+		}
+		if (buf.length - pos < 11) {
+			makeRoom(11);
+		}
+		if (n < 0) {
+			buf[pos++] = '-';
+			n = -n;
+		}
+		int digits = 1;
+		for (int k = n; k >= 10; k /= 10) {
+			digits++;
+		}
+		for (int k = pos + digits - 1; k >= pos; k--) {
+			buf[k] = (char) ('0' + n % 10);
+			n /= 10;
+		}
+		pos += digits;
+		return this;
+	}
+
+	/**
+	 * Appends n spaces (nothing if n is not positive).
+	 */
+	public AsmWriter pad(int n) {
+		while (n > 0) {
+			int chunk = Math.min(n, SPACES.length);
+			if (buf.length - pos < chunk) {
+				makeRoom(chunk);
+			}
+			System.arraycopy(SPACES, 0, buf, pos, chunk);
+			pos += chunk;
+			n -= chunk;
+		}
+		return this;
+	}
+
+	public AsmWriter newline() {
+		return append('\n');
+	}
+
+	/**
+	 * Appends everything collected by this in-memory AsmWriter to dest.
+	 */
+	public void writeTo(AsmWriter dest) {
+		dest.append(buf, 0, pos);
+	}
+
+	/**
+	 * Everything collected so far by this in-memory AsmWriter (a view of
+	 * the buffer, valid until the next append).
+	 */
+	public CharSequence contents() {
+		return CharBuffer.wrap(buf, 0, pos);
+	}
+
+	/**
+	 * Empties this in-memory AsmWriter, keeping its buffer for reuse.
+	 */
+	public void reset() {
+		pos = 0;
+	}
+
+	/**
+	 * Pushes everything appended so far to the channel or writer.
+	 */
+	public void flush() {
+		flushBuffer();
+		if (writer != null && error == null) {
+			try {
+				writer.flush();
+			} catch (IOException ex) {
+				error = ex;
+			}
+		}
+	}
+
+	/**
+	 * Flushes and closes the underlying channel or writer. Closing twice
+	 * is harmless.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		flush();
+		closed = true;
+		try {
+			if (channel != null) {
+				if (error == null) {
+					encode(true);
+				}
+				channel.close();
+			} else if (writer != null) {
+				writer.close();
+			}
+		} catch (IOException ex) {
+			if (error == null) {
+				error = ex;
+			}
+		}
+	}
+
+	/**
+	 * Flushes, then reports whether any write has failed.
+	 */
+	public boolean checkError() {
+		if (!closed) {
+			flush();
+		}
+		return error != null;
+	}
+
+	private boolean inMemory() {
+		return channel == null && writer == null;
+	}
+
+	/**
+	 * Makes room for n more chars, by growing an in-memory buffer or by
+	 * flushing.
+	 */
+	private void makeRoom(int n) {
+		if (inMemory()) {
+			grow(n);
+		} else {
+			flushBuffer();
+		}
+	}
+
+	private void grow(int n) {
+		int size = Math.max(buf.length * 2, pos + n);
+		buf = java.util.Arrays.copyOf(buf, size);
+	}
+
+	private void flushBuffer() {
+		if (pos == 0 || inMemory()) {
+			return;
+		}
+		if (error != null || closed) {
+			pos = 0;
+			return;
+		}
+		try {
+			if (writer != null) {
+				writer.write(buf, 0, pos);
+				pos = 0;
+			} else {
+				encode(false);
+			}
+		} catch (IOException ex) {
+			error = ex;
+			pos = 0;
+		}
+	}
+
+	/**
+	 * Encodes the buffer into the channel. A surrogate pair split across
+	 * the end of the buffer is kept back for the next chunk, unless this
+	 * is the end of the input, in which case the encoder is also flushed.
+	 */
+	private void encode(boolean endOfInput) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(buf, 0, pos);
+		while (true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			drain();
+			if (result.isUnderflow()) {
+				break;
+			}
+			if (result.isError()) {
+				result.throwException();
+			}
+		}
+		if (endOfInput) {
+			while (encoder.flush(bytes).isOverflow()) {
+				drain();
+			}
+			drain();
+		}
+		int left = chars.remaining();
+		System.arraycopy(buf, chars.position(), buf, 0, left);
+		pos = left;
+	}
+
+	// writes the encoded bytes to the channel
+	private void drain() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+}
@@ -0,0 +1,209 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * BatchCompiler
+ *
+ * Compiles many Gibberish files in one JVM. This is what
+ *    java P6 --batch <dir|list>
+ * runs. The argument is either a directory, in which case every
+ * .gibberish file in it is compiled, or a text file that names one source
+ * file per line. Each source foo.gibberish is compiled to foo.s next to it,
+ * with the options given on the command line.
+ *
+ * Files are compiled on a work-stealing fork/join pool, one task per file.
+ * Every compilation has its own {@link CompilationContext}, so the output
+ * is the same as compiling the files one at a time. Diagnostics are
+ * buffered per file and printed in input order once all files are done,
+ * followed by throughput and per-file latency percentiles. A file that
+ * crashes the compiler (a stack overflow on a deeply nested expression,
+ * say) is reported as an internal error, its partial output is deleted,
+ * and the other files are compiled as usual.
+ */
+class BatchCompiler {
+	private static final String SUFFIX = ".gibberish";
+
+	private List<File> sources;
+	private String[] options;
+	private PrintStream report;
+
+	/**
+	 * @param sources files to compile
+	 * @param options command-line options for each compilation (see
+	 *                {@link P6#parseOptions}), already checked
+	 * @param report stream that receives diagnostics and the summary
+	 */
+	public BatchCompiler(List<File> sources, String[] options,
+	                     PrintStream report) {
+		this.sources = sources;
+		this.options = options;
+		this.report = report;
+	}
+
+	/**
+	 * Builds the list of sources named by a --batch argument.
+	 * @param arg directory of .gibberish files, or file listing sources
+	 * @throws IOException if the list file cannot be read
+	 */
+	public static List<File> collectSources(String arg) throws IOException {
+		File f = new File(arg);
+		List<File> list = new ArrayList<File>();
+
+		if (f.isDirectory()) {
+			File[] files = f.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.isFile() && file.getName().endsWith(SUFFIX)) {
+						list.add(file);
+					}
+				}
+			}
+			Collections.sort(list);
+			return list;
+		}
+
+		BufferedReader in = new BufferedReader(new FileReader(f));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() != 0 && !line.startsWith("#")) {
+					list.add(new File(line));
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return list;
+	}
+
+	/**
+	 * Output file for the given source: foo.gibberish becomes foo.s
+	 */
+	static File outfileFor(File source) {
+		String name = source.getPath();
+		if (name.endsWith(SUFFIX)) {
+			name = name.substring(0, name.length() - SUFFIX.length());
+		}
+		return new File(name + ".s");
+	}
+
+	/**
+	 * Compiles every source and prints the summary.
+	 * @return the number of files that did not compile
+	 */
+	public int run() {
+		int n = sources.size();
+		final int[] results = new int[n];
+		final long[] nanos = new long[n];
+		final ByteArrayOutputStream[] diags = new ByteArrayOutputStream[n];
+		// a file whose task never runs (if the wait is interrupted) failed
+		Arrays.fill(results, P6.RESULT_OTHER_ERROR);
+
+		ForkJoinPool pool = new ForkJoinPool();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(n);
+		for (int i = 0; i < n; i++) {
+			final int k = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					long start = System.nanoTime();
+					diags[k] = new ByteArrayOutputStream();
+					results[k] = compile(sources.get(k), options,
+							new PrintStream(diags[k], true));
+					nanos[k] = System.nanoTime() - start;
+					return null;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			// compile() handles every failure itself; this means a bug
+			throw new IllegalStateException(ex.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		int failed = 0;
+		for (int i = 0; i < n; i++) {
+			if (diags[i] != null && diags[i].size() != 0) {
+				report.println(sources.get(i) + ":");
+				report.print(diags[i].toString());
+			}
+			if (results[i] != P6.RESULT_CORRECT) {
+				failed++;
+			}
+		}
+		printSummary(n, failed, elapsed, nanos);
+		return failed;
+	}
+
+	/**
+	 * Compiles one source file, writing its messages to diagnostics.
+	 * @return one of the P6.RESULT_* codes
+	 */
+	private static int compile(File source, String[] options,
+	                           PrintStream diagnostics) {
+		P6 instance = new P6();
+		instance.setDiagnostics(diagnostics);
+		instance.parseOptions(options, 0);
+		File outfile = outfileFor(source);
+		int result = P6.RESULT_OTHER_ERROR;
+		try {
+			instance.setInfile(source.getPath());
+			instance.setOutfile(outfile.getPath());
+			result = instance.process();
+		} catch (RuntimeException ex) {
+			diagnostics.println("internal compiler error: " + ex);
+			result = P6.RESULT_INTERNAL_ERROR;
+		} catch (StackOverflowError ex) {
+			diagnostics.println("internal compiler error: " + ex);
+			result = P6.RESULT_INTERNAL_ERROR;
+		} catch (Exception ex) {
+			diagnostics.println(ex.getMessage());
+		} finally {
+			instance.cleanup();
+		}
+		// whatever was written before the crash or the failed write is
+		// not a program
+		if (result == P6.RESULT_INTERNAL_ERROR
+		    || result == P6.RESULT_WRITE_ERROR) {
+			outfile.delete();
+		}
+		return result;
+	}
+
+	private void printSummary(int n, int failed, long elapsed, long[] nanos) {
+		double secs = elapsed / 1e9;
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+
+		report.println(n + " files, " + failed + " failed, "
+			+ String.format("%.3f s, %.1f files/sec", secs,
+			                secs > 0 ? n / secs : 0.0));
+		report.println(String.format(
+			"latency ms: p50 %.3f  p90 %.3f  p99 %.3f  max %.3f",
+			percentile(sorted, 50), percentile(sorted, 90),
+			percentile(sorted, 99), percentile(sorted, 100)));
+	}
+
+	/**
+	 * Nearest-rank percentile of an ascending array of nanosecond
+	 * latencies, in milliseconds.
+	 */
+	static double percentile(long[] sorted, int p) {
+		if (sorted.length == 0) {
+			return 0.0;
+		}
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1] / 1e6;
+	}
+}
@@ -1,11 +1,10 @@
-import java.io.*;
-
 // **********************************************************************
 // The Codegen class provides constants and operations useful for code
 // generation.
 //
 // The constants are:
-//     Registers: FP, SP, RA, V0, V1, A0, T0, T1
+//     Registers: FP, SP, RA, V0, V1, A0, T0, T1, and TEMPS (all of the
+//                temporaries, for register-mode expression evaluation)
 //     Values: TRUE, FALSE
 //
 // The operations include various "generate" methods to print nicely
@@ -16,15 +15,22 @@ import java.io.*;
 //     generateLabeled
 //     genPush
 //     genPop
+//     genEnter, genExit, genFramelessExit (function prologue and
+//                epilogue)
+//     genTailCall
+//     genMulConst, genDivConst (multiplication and division by a
+//                constant, without mul or div)
 //     genLabel
 // and a method nextLabel to create and return a new label.
 //
+// The output file and the label counter belong to the CompilationContext
+// of the compilation running on the calling thread. Code is formatted
+// straight into the context's AsmWriter, without building intermediate
+// strings.
+//
 // **********************************************************************
 
 public class Codegen {
-    // file into which generated code is written
-    public static PrintWriter p = null;
-
     // values of true and false
     public static final String TRUE = "1";
     public static final String FALSE = "0";
@@ -38,15 +44,26 @@ public class Codegen {
     public static final String A0 = "$a0";
     public static final String T0 = "$t0";
     public static final String T1 = "$t1";
+    public static final String[] TEMPS = {
+        "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$t8", "$t9"
+    };
 
 
     // for pretty printing generated code
     private static final int MAXLEN = 4;
 
 
-    // for generating labels
-    private static int currLabel = 0;
-
+    // **********************************************************************
+    // output
+    //    return the current compilation's output file, counting opcode as
+    //    an emitted instruction unless it is an assembler directive
+    // **********************************************************************
+    private static AsmWriter output(String opcode) {
+        CompilationContext ctx = CompilationContext.current();
+        if (opcode.length() != 0 && opcode.charAt(0) != '.')
+            ctx.stats.instructions++;
+        return ctx.out;
+    }
 
     // **********************************************************************
     // **********************************************************************
@@ -61,22 +78,21 @@ public class Codegen {
     // **********************************************************************
     public static void generateWithComment(String opcode, String comment,
                                         String arg1, String arg2, String arg3) {
+        AsmWriter p = output(opcode);
         int space = MAXLEN - opcode.length() + 2;
 
-        p.print("\t" + opcode);
+        p.append('\t').append(opcode);
         if (arg1 != "") {
-            for (int k = 1; k <= space; k++)
-                p.print(" ");
-            p.print(arg1);
+            p.pad(space).append(arg1);
             if (arg2 != "") {
-                p.print(", " + arg2);
+                p.append(", ").append(arg2);
                 if (arg3 != "")
-                    p.print(", " + arg3);
+                    p.append(", ").append(arg3);
             }
         }
         if (comment != "")
-            p.print("\t\t#" + comment);
-        p.println();
+            p.append("\t\t#").append(comment);
+        p.newline();
     }
 
     public static void generateWithComment(String opcode, String comment,
@@ -100,20 +116,19 @@ public class Codegen {
     // **********************************************************************
     public static void generate(String opcode, String arg1, String arg2,
                                 String arg3) {
+        AsmWriter p = output(opcode);
         int space = MAXLEN - opcode.length() + 2;
 
-        p.print("\t" + opcode);
+        p.append('\t').append(opcode);
         if (arg1 != "") {
-            for (int k = 1; k <= space; k++)
-                p.print(" ");
-            p.print(arg1);
+            p.pad(space).append(arg1);
             if (arg2 != "") {
-                p.print(", " + arg2);
+                p.append(", ").append(arg2);
                 if (arg3 != "")
-                    p.print(", " + arg3);
+                    p.append(", ").append(arg3);
             }
         }
-        p.println();
+        p.newline();
     }
 
     public static void generate(String opcode, String arg1, String arg2) {
@@ -135,12 +150,12 @@ public class Codegen {
     // **********************************************************************
     public static void generate(String opcode, String arg1, String arg2,
                                 int arg3) {
+        AsmWriter p = output(opcode);
         int space = MAXLEN - opcode.length() + 2;
 
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++)
-            p.print(" ");
-        p.println(arg1 + ", " + arg2 + ", " + arg3);
+        p.append('\t').append(opcode).pad(space);
+        p.append(arg1).append(", ").append(arg2).append(", ").append(arg3);
+        p.newline();
     }
 
     // **********************************************************************
@@ -149,12 +164,11 @@ public class Codegen {
     //    do:     write nicely formatted code (ending with new line)
     // **********************************************************************
     public static void generate(String opcode, String arg1, int arg2) {
+        AsmWriter p = output(opcode);
         int space = MAXLEN - opcode.length() + 2;
 
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++)
-            p.print(" ");
-        p.println(arg1 + ", " + arg2);
+        p.append('\t').append(opcode).pad(space);
+        p.append(arg1).append(", ").append(arg2).newline();
     }
 
     // **********************************************************************
@@ -166,15 +180,15 @@ public class Codegen {
     // **********************************************************************
     public static void generateIndexed(String opcode, String arg1, String arg2,
                                        int arg3, String comment) {
+        AsmWriter p = output(opcode);
         int space = MAXLEN - opcode.length() + 2;
 
-        p.print("\t" + opcode);
-        for (int k = 1; k <= space; k++)
-            p.print(" ");
-        p.print(arg1 + ", " + arg3 + "(" + arg2 + ")");
+        p.append('\t').append(opcode).pad(space);
+        p.append(arg1).append(", ").append(arg3);
+        p.append('(').append(arg2).append(')');
         if (comment != "")
-            p.print("\t#" + comment);
-        p.println();
+            p.append("\t#").append(comment);
+        p.newline();
     }
 
     public static void generateIndexed(String opcode, String arg1, String arg2,
@@ -189,18 +203,16 @@ public class Codegen {
     // **********************************************************************
     public static void generateLabeled(String label, String opcode,
                                        String comment, String arg1) {
+        AsmWriter p = output(opcode);
         int space = MAXLEN - opcode.length() + 2;
 
-        p.print(label + ":");
-        p.print("\t" + opcode);
-        if (arg1 != "") {
-            for (int k = 1; k <= space; k++)
-                p.print(" ");
-            p.print(arg1);
-        }
+        p.append(label).append(':');
+        p.append('\t').append(opcode);
+        if (arg1 != "")
+            p.pad(space).append(arg1);
         if (comment != "")
-            p.print("\t# " + comment);
-        p.println();
+            p.append("\t# ").append(comment);
+        p.newline();
     }
 
     public static void generateLabeled(String label, String opcode,
@@ -226,16 +238,242 @@ public class Codegen {
         generate("addu", SP, SP, 4);
     }
 
+    // **********************************************************************
+    // genEnter
+    //    generate a function's prologue: the parameters end up at 0, -4,
+    //    ... ($fp), followed by the return address, the caller's frame
+    //    pointer and frameSize bytes for locals. A leaf function (one that
+    //    makes no calls) keeps the return address in $ra; its slot is
+    //    left unused.
+    // **********************************************************************
+    public static void genEnter(int paramSize, int frameSize, boolean leaf) {
+        if (leaf) {
+            generateIndexed("sw", FP, SP, -4);
+            generate("addu", FP, SP, paramSize);
+            generate("subu", SP, SP, frameSize + 8);
+            return;
+        }
+        genPush(RA);
+        genPush(FP);
+        generate("addu", FP, SP, paramSize + 8);
+        generate("subu", SP, SP, frameSize);
+    }
+
+    // **********************************************************************
+    // genExit
+    //    generate the epilogue matching genEnter; restoring $sp to $fp
+    //    also pops the parameters
+    // **********************************************************************
+    public static void genExit(int paramSize, boolean leaf) {
+        if (!leaf) {
+            generateIndexed("lw", RA, FP, -paramSize);
+        }
+        generate("move", T0, FP);
+        generateIndexed("lw", FP, FP, -paramSize - 4);
+        generate("move", SP, T0);
+        generate("jr", RA);
+    }
+
+    // **********************************************************************
+    // genFramelessExit
+    //    generate the epilogue of a leaf function that has no frame at
+    //    all (no prologue, $fp untouched): pop the parameters and return
+    // **********************************************************************
+    public static void genFramelessExit(int paramSize) {
+        if (paramSize != 0) {
+            generate("addu", SP, SP, paramSize);
+        }
+        generate("jr", RA);
+    }
+
+    // **********************************************************************
+    // genTailCall
+    //    given:  the callee's label, the bytes of arguments that have just
+    //            been pushed for it, and the calling function's parameter
+    //            bytes and kind of frame (see genEnter, genFramelessExit)
+    //    do:     take down the caller's frame, move the arguments to where
+    //            the caller's own arguments were, and jump to the callee,
+    //            which then returns straight to the caller's caller
+    // **********************************************************************
+    public static void genTailCall(String label, int argSize, int paramSize,
+                                   boolean leaf, boolean frameless) {
+        // the caller's arguments end at top(base), below which the new
+        // ones go; the pushed ones start at argSize($sp)
+        String base = frameless ? SP : FP;
+        int top = frameless ? paramSize + argSize : 0;
+        if (!frameless) {
+            if (!leaf) {
+                generateIndexed("lw", RA, FP, -paramSize);
+            }
+            generateIndexed("lw", T1, FP, -paramSize - 4);
+        }
+        // the new place is higher up, so copying from the top down never
+        // overwrites a word before it has been copied
+        boolean inPlace = frameless && paramSize == 0;
+        for (int off = 0; off < argSize && !inPlace; off += 4) {
+            generateIndexed("lw", T0, SP, argSize - off);
+            generateIndexed("sw", T0, base, top - off);
+        }
+        if (frameless) {
+            if (paramSize != 0) {
+                generate("addu", SP, SP, paramSize);
+            }
+        } else {
+            generate("subu", SP, FP, argSize);
+            generate("move", FP, T1);
+        }
+        generate("j", label);
+    }
+
+    // **********************************************************************
+    // isShiftAdd
+    //    can multiplication by c be done by genMulConst: is |c| 0, a power
+    //    of two, or the sum or difference of two powers of two?
+    // **********************************************************************
+    public static boolean isShiftAdd(int c) {
+        long m = Math.abs((long) c);
+        long low = m & -m;
+        return Long.bitCount(m) <= 2 || Long.bitCount(m + low) == 1;
+    }
+
+    // **********************************************************************
+    // genMulConst
+    //    given:  registers dest, src and scratch, and a constant c for
+    //            which isShiftAdd(c) holds
+    //    do:     dest = src * c by one or two shifts and an add or
+    //            subtract, negated if c < 0; dest may be src, scratch must
+    //            be different from both
+    // **********************************************************************
+    public static void genMulConst(String dest, String src, int c,
+                                   String scratch) {
+        long m = Math.abs((long) c);
+        long low = m & -m;
+        if (m == 0) {
+            generate("li", dest, 0);
+            return;
+        }
+        int b = Long.numberOfTrailingZeros(m);
+        if (m == low) {
+            genShift(dest, src, b);
+        } else {
+            // m = high + low or high - low, for a power of two high
+            boolean add = Long.bitCount(m) == 2;
+            int a = Long.numberOfTrailingZeros(add ? m - low : m + low);
+            generate("sll", scratch, src, a);
+            genShift(dest, src, b);
+            generate(add ? "addu" : "subu", dest, scratch, dest);
+        }
+        if (c < 0) {
+            generate("negu", dest, dest);
+        }
+    }
+
+    // **********************************************************************
+    // genDivConst
+    //    given:  registers dest, src and scratch, and a constant c != 0
+    //    do:     dest = src / c (rounded toward zero, like div) without
+    //            div; dest may be src, scratch must be different from both
+    //
+    //    Division by 2^k shifts right after adding 2^k - 1 to a negative
+    //    dividend. Other divisors multiply by a "magic number" M, keeping
+    //    the high word, and shift right by s, then add one for a negative
+    //    quotient (Hacker's Delight, chapter 10).
+    // **********************************************************************
+    public static void genDivConst(String dest, String src, int c,
+                                   String scratch) {
+        long m = Math.abs((long) c);
+        int k = Long.numberOfTrailingZeros(m);
+        if (m == 1) {
+            genShift(dest, src, 0);
+        } else if (m == 1L << k) {
+            // the bias 2^k - 1 is the top k bits of the sign, shifted down
+            if (k == 1) {
+                generate("srl", scratch, src, 31);
+            } else {
+                generate("sra", scratch, src, 31);
+                generate("srl", scratch, scratch, 32 - k);
+            }
+            generate("addu", scratch, src, scratch);
+            generate("sra", dest, scratch, k);
+        } else {
+            int[] magic = magic(c);
+            generate("li", scratch, magic[0]);
+            generate("mult", src, scratch);
+            generate("mfhi", scratch);
+            if (c > 0 && magic[0] < 0) {
+                generate("addu", scratch, scratch, src);
+            } else if (c < 0 && magic[0] > 0) {
+                generate("subu", scratch, scratch, src);
+            }
+            if (magic[1] > 0) {
+                generate("sra", scratch, scratch, magic[1]);
+            }
+            generate("srl", dest, scratch, 31);
+            generate("addu", dest, scratch, dest);
+            return;
+        }
+        if (c < 0) {
+            generate("negu", dest, dest);
+        }
+    }
+
+    // **********************************************************************
+    // magic
+    //    the multiplier M and shift s for dividing by d (|d| >= 2, not a
+    //    power of two) in genDivConst: the smallest s for which M is
+    //    exact enough for every 32-bit dividend
+    // **********************************************************************
+    private static int[] magic(int d) {
+        final long two31 = 0x80000000L;
+        long ad = Math.abs((long) d);
+        long t = two31 + (d < 0 ? 1 : 0);
+        long anc = t - 1 - t % ad;
+        int p = 31;
+        long q1 = two31 / anc;
+        long r1 = two31 - q1 * anc;
+        long q2 = two31 / ad;
+        long r2 = two31 - q2 * ad;
+        long delta;
+        do {
+            p++;
+            q1 = 2 * q1;
+            r1 = 2 * r1;
+            if (r1 >= anc) {
+                q1++;
+                r1 -= anc;
+            }
+            q2 = 2 * q2;
+            r2 = 2 * r2;
+            if (r2 >= ad) {
+                q2++;
+                r2 -= ad;
+            }
+            delta = ad - r2;
+        } while (q1 < delta || (q1 == delta && r1 == 0));
+        int multiplier = (int) (q2 + 1);
+        return new int[] { d < 0 ? -multiplier : multiplier, p - 32 };
+    }
+
+    // dest = src << k
+    private static void genShift(String dest, String src, int k) {
+        if (k != 0) {
+            generate("sll", dest, src, k);
+        } else if (!dest.equals(src)) {
+            generate("move", dest, src);
+        }
+    }
+
     // **********************************************************************
     // genLabel
     //   given:    label L and comment (comment may be empty)
     //   generate: L:    # comment
     // **********************************************************************
     public static void genLabel(String label, String comment) {
-        p.print(label + ":");
+        AsmWriter p = CompilationContext.current().out;
+        p.append(label).append(':');
         if (comment != "")
-            p.print("\t\t" + "# " + comment);
-        p.println();
+            p.append("\t\t# ").append(comment);
+        p.newline();
     }
 
     public static void genLabel(String label) {
@@ -245,10 +483,11 @@ public class Codegen {
     // **********************************************************************
     // Return a different label each time:
     //        L0 L1 L2, etc.
+    // prefixed with the current label namespace (each function has its
+    // own, see FnDeclNode.codeGen)
     // **********************************************************************
     public static String nextLabel() {
-        Integer k = new Integer(currLabel++);
-        String tmp = ".L" + k;
-        return(tmp);
+        CompilationContext ctx = CompilationContext.current();
+        return ctx.labelPrefix + ctx.currLabel++;
     }
 }
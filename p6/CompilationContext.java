@@ -0,0 +1,169 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * CompilationContext
+ *
+ * Owns all of the mutable state that belongs to one compilation: the code
+ * generator's output, label counter and {@link StringPool}, the scanner's
+ * character number, the error flag, whether a main function has been seen,
+ * and the {@link CompileStats} counters.
+ *
+ * A context is installed for the current thread by {@link P6#process} for
+ * the duration of a compilation, so several compilations can run on
+ * different threads of the same JVM without sharing any state. In parallel
+ * mode, each function is handled by a task with a {@link #child} context of
+ * its own.
+ */
+public class CompilationContext {
+	private static final ThreadLocal<CompilationContext> current =
+		new ThreadLocal<CompilationContext>();
+
+	// file into which generated code is written
+	AsmWriter out;
+
+	// stream to which errors and warnings are written
+	PrintStream diagnostics;
+
+	// for generating labels: labelPrefix followed by currLabel
+	String labelPrefix = ".L";
+	int currLabel = 0;
+
+	// the frame of the function whose code is being generated: its
+	// parameter bytes, and whether it skips saving $ra (see
+	// Codegen.genEnter)
+	int fnParamSize = 0;
+	boolean fnLeaf = false;
+
+	// string literals, emitted once at the end of the output; shared with
+	// child contexts
+	StringPool strings = new StringPool();
+
+	// character number at which the current token starts on its line
+	int charNum = 1;
+
+	// set once a fatal error has been reported
+	boolean err = false;
+
+	// if not null, ErrMsg collects messages here instead of printing them
+	List<ErrMsg.Message> deferred;
+
+	// cleared once a function named main has been declared
+	boolean noMain = true;
+
+	// counters and (under --stats) phase timings
+	CompileStats stats = new CompileStats(false);
+
+	// process functions concurrently where a phase supports it
+	boolean parallel = false;
+
+	// how many of Codegen.TEMPS expressions may be evaluated in; 0 means
+	// every intermediate value is pushed on the stack
+	int registers = 0;
+
+	// pass each function's code through the Peephole optimizer
+	boolean peephole = false;
+
+	// where a function's code is collected for the Peephole optimizer;
+	// reused from one function to the next
+	AsmWriter scratch;
+
+	// generate code through the three-address IR (see IR, MipsEmitter)
+	boolean ir = false;
+
+	// how many copies of its body a repeat loop with a literal count runs
+	// per iteration (see RepeatStmtNode.codeGen); 1 does not unroll
+	int unroll = 1;
+
+	/**
+	 * Creates a context that writes diagnostics to System.err.
+	 * @param out destination for generated code (may be null if code
+	 *            generation is never reached)
+	 */
+	public CompilationContext(AsmWriter out) {
+		this(out, System.err);
+	}
+
+	/**
+	 * @param out destination for generated code
+	 * @param diagnostics destination for error and warning messages
+	 */
+	public CompilationContext(AsmWriter out, PrintStream diagnostics) {
+		this.out = out;
+		this.diagnostics = diagnostics;
+	}
+
+	/**
+	 * A context for a task working on part of this compilation (one
+	 * function, say). It shares the options and the string pool, but has
+	 * its own output, label counter, error flag and statistics, and defers
+	 * its diagnostics.
+	 */
+	CompilationContext child(AsmWriter out) {
+		CompilationContext child = new CompilationContext(out, diagnostics);
+		child.parallel = parallel;
+		child.registers = registers;
+		child.peephole = peephole;
+		child.ir = ir;
+		child.unroll = unroll;
+		child.strings = strings;
+		child.deferred = new ArrayList<ErrMsg.Message>();
+		return child;
+	}
+
+	/**
+	 * Runs tasks on the common fork/join pool and waits for all of them.
+	 * An exception thrown by a task is rethrown here.
+	 */
+	static void invokeAll(List<Callable<Void>> tasks) {
+		try {
+			for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Returns the context installed for the current thread.
+	 * @throws IllegalStateException if no compilation is in progress
+	 */
+	public static CompilationContext current() {
+		CompilationContext ctx = current.get();
+		if (ctx == null) {
+			throw new IllegalStateException("no compilation in progress on "
+				+ Thread.currentThread().getName());
+		}
+		return ctx;
+	}
+
+	/**
+	 * Installs ctx as the current thread's context.
+	 * @return the previously installed context (possibly null), to be
+	 *         handed back to {@link #restore}
+	 */
+	static CompilationContext enter(CompilationContext ctx) {
+		CompilationContext prev = current.get();
+		current.set(ctx);
+		return prev;
+	}
+
+	/**
+	 * Reinstates a context returned by {@link #enter}.
+	 */
+	static void restore(CompilationContext prev) {
+		if (prev == null) {
+			current.remove();
+		} else {
+			current.set(prev);
+		}
+	}
+}
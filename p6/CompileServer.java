@@ -0,0 +1,300 @@
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+/**
+ * CompileServer
+ *
+ * A resident compiler. "java P6 --server [port] [--max-source=N]" listens
+ * on the loopback interface and runs {@link P6#process} for every request
+ * it receives, so the classes stay loaded and the JIT stays warm between
+ * compilations.
+ * "java P6 --client <infile> <outfile> [port]" ({@link CompileClient})
+ * behaves like "java P6 <infile> <outfile>" but compiles in the server.
+ *
+ * A connection carries any number of requests, answered in order. Every
+ * string goes over the wire as an int byte count followed by that many
+ * bytes of UTF-8:
+ *    request:  source text
+ *    reply:    int result code (one of P6.RESULT_*), assembly, diagnostics
+ * A request whose source is longer than the maximum source size (default
+ * {@link #DEFAULT_MAX_SOURCE} bytes) is answered with an error, without
+ * reading it, and the connection is closed.
+ *
+ * Each connection is served on its own thread: a virtual thread when the
+ * runtime provides them (Java 21 and later), a pooled platform thread
+ * otherwise.
+ */
+class CompileServer {
+	public static final int DEFAULT_PORT = 5536;
+	public static final int DEFAULT_MAX_SOURCE = 16 << 20;
+
+	private int port;
+	private int maxSource;
+
+	/**
+	 * @param port loopback port to listen on
+	 * @param maxSource the longest source, in bytes, that is accepted
+	 */
+	public CompileServer(int port, int maxSource) {
+		this.port = port;
+		this.maxSource = maxSource;
+	}
+
+	/**
+	 * Accepts connections until the process is killed.
+	 * @throws IOException if the port cannot be bound
+	 */
+	public void serve() throws IOException {
+		ServerSocket server = new ServerSocket(port, 50,
+				InetAddress.getLoopbackAddress());
+		ExecutorService executor = newExecutor();
+		System.err.println("compile server listening on "
+			+ server.getLocalSocketAddress());
+
+		try {
+			while (true) {
+				final Socket socket = server.accept();
+				executor.execute(new Runnable() {
+					public void run() {
+						handle(socket);
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			server.close();
+		}
+	}
+
+	/**
+	 * Answers requests on one connection until the client closes it.
+	 */
+	private void handle(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException ex) {
+					return; // client is done
+				}
+				if (length < 0 || length > maxSource) {
+					// the length comes from the client: refuse it rather
+					// than allocate it
+					out.writeInt(P6.RESULT_OTHER_ERROR);
+					writeString(out, "");
+					writeString(out, "source of " + length + " bytes is "
+						+ "larger than the server accepts (" + maxSource
+						+ ")\n");
+					out.flush();
+					return;
+				}
+				String source = readString(in, length);
+
+				StringWriter asm = new StringWriter();
+				ByteArrayOutputStream diag = new ByteArrayOutputStream();
+				int result = compile(source, asm,
+					new PrintStream(diag, true, "UTF-8"));
+
+				out.writeInt(result);
+				writeString(out, asm.toString());
+				writeString(out, diag.toString("UTF-8"));
+				out.flush();
+			}
+		} catch (IOException ex) {
+			// the client went away mid-request; nothing left to answer
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ex) {
+			}
+		}
+	}
+
+	/**
+	 * Compiles source text the way "java P6 in out" compiles a file.
+	 * @return one of the P6.RESULT_* codes
+	 */
+	static int compile(String source, Writer asm, PrintStream diagnostics) {
+		P6 instance = new P6();
+		instance.setInput(SourceBuffer.of(source));
+		instance.setOutput(asm);
+		instance.setDiagnostics(diagnostics);
+		try {
+			return instance.process();
+		} catch (RuntimeException ex) {
+			// an internal compiler error must not take the server down
+			diagnostics.println("internal compiler error: " + ex);
+			return P6.RESULT_INTERNAL_ERROR;
+		} catch (StackOverflowError ex) {
+			// nor may a deeply nested source
+			diagnostics.println("internal compiler error: " + ex);
+			return P6.RESULT_INTERNAL_ERROR;
+		} finally {
+			instance.cleanup();
+		}
+	}
+
+	/**
+	 * One virtual thread per task if the runtime has them, otherwise a
+	 * cached pool of platform threads.
+	 */
+	private static ExecutorService newExecutor() {
+		try {
+			Method m = Executors.class.getMethod(
+				"newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("bad string length " + length);
+		}
+		return readString(in, length);
+	}
+
+	// the bytes of a string whose length has already been read
+	private static String readString(DataInputStream in, int length)
+			throws IOException {
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Entry point for --server [port] [--max-source=N]
+	 */
+	public static void main(String[] args) {
+		int port = DEFAULT_PORT;
+		int maxSource = DEFAULT_MAX_SOURCE;
+		String arg = null;
+		try {
+			for (int k = 1; k < args.length; k++) {
+				arg = args[k];
+				if (arg.startsWith("--max-source=")) {
+					maxSource = Integer.parseInt(arg.substring(13));
+				} else {
+					port = Integer.parseInt(arg);
+				}
+			}
+			new CompileServer(port, maxSource).serve();
+		} catch (NumberFormatException ex) {
+			System.err.println("bad number: " + arg);
+			System.exit(-1);
+		} catch (IOException ex) {
+			System.err.println("Could not listen on port " + port + ": "
+				+ ex.getMessage());
+			System.exit(-1);
+		}
+	}
+}
+
+/**
+ * CompileClient
+ *
+ * Thin client for {@link CompileServer}. Invoked as
+ *    java P6 --client <infile> <outfile> [port]
+ * it sends the source to the server, writes the assembly it gets back to
+ * outfile, prints the diagnostics, and exits the same way P6 would.
+ */
+class CompileClient {
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			die("please supply name of the input file "
+				+ "and name of file for assembly output.");
+		}
+		String infile = args[1];
+		String outfile = args[2];
+		int port = CompileServer.DEFAULT_PORT;
+		if (args.length > 3) {
+			try {
+				port = Integer.parseInt(args[3]);
+			} catch (NumberFormatException ex) {
+				die("bad port number: " + args[3]);
+			}
+		}
+
+		String source = null;
+		try {
+			source = readFile(infile);
+		} catch (IOException ex) {
+			die("Could not open " + infile + " for reading");
+		}
+
+		int result = P6.RESULT_OTHER_ERROR;
+		String asm = "";
+		String diagnostics = "";
+		try {
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			try {
+				DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+				DataInputStream in = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+				CompileServer.writeString(out, source);
+				out.flush();
+				result = in.readInt();
+				asm = CompileServer.readString(in);
+				diagnostics = CompileServer.readString(in);
+			} finally {
+				socket.close();
+			}
+		} catch (IOException ex) {
+			die("Could not reach compile server on port " + port + ": "
+				+ ex.getMessage());
+		}
+
+		try {
+			Writer out = new OutputStreamWriter(
+				new FileOutputStream(outfile), "UTF-8");
+			out.write(asm);
+			out.close();
+		} catch (IOException ex) {
+			die("Could not open " + outfile + " for writing");
+		}
+
+		System.err.print(diagnostics);
+		if (result != P6.RESULT_CORRECT) {
+			die(P6.resultMessage(result));
+		}
+	}
+
+	private static String readFile(String filename) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(filename),
+		                                  "UTF-8");
+		try {
+			StringBuilder sb = new StringBuilder();
+			char[] buf = new char[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				sb.append(buf, 0, n);
+			}
+			return sb.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void die(String msg) {
+		System.err.println(msg);
+		System.exit(-1);
+	}
+}
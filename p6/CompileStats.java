@@ -0,0 +1,195 @@
+import java.io.*;
+import java.lang.management.*;
+
+/**
+ * CompileStats
+ *
+ * Per-compilation instrumentation, printed by "java P6 --stats[=json]".
+ * For each phase it records wall time, CPU time and bytes allocated by the
+ * compiling thread; it also counts tokens, AST nodes, symbols inserted into
+ * a SymTable and instructions emitted through Codegen, and how many of
+ * those instructions each {@link Peephole} rule removed.
+ *
+ * The counters are always maintained (they are plain increments on the
+ * CompilationContext); phase timing only happens when timing is enabled.
+ */
+public class CompileStats {
+	public static final int SCAN = 0;
+	public static final int PARSE = 1;
+	public static final int NAME_ANALYSIS = 2;
+	public static final int TYPE_CHECK = 3;
+	public static final int OPTIMIZE = 4;
+	public static final int CODE_GEN = 5;
+
+	private static final String[] PHASE_NAMES = {
+		"scan", "parse", "nameAnalysis", "typeCheck", "optimize", "codeGen"
+	};
+
+	// counters
+	long tokens;
+	long astNodes;
+	long symbols;
+	long instructions;
+
+	// instructions removed by each Peephole rule (see
+	// Peephole.RULE_NAMES), or null if the optimizer did not run
+	long[] peephole;
+
+	private boolean timing;
+	private long[] wall = new long[PHASE_NAMES.length];
+	private long[] cpu = new long[PHASE_NAMES.length];
+	private long[] alloc = new long[PHASE_NAMES.length];
+	private boolean[] ran = new boolean[PHASE_NAMES.length];
+
+	// readings taken by begin()
+	private long startWall;
+	private long startCpu;
+	private long startAlloc;
+
+	private static final ThreadMXBean threads =
+		ManagementFactory.getThreadMXBean();
+
+	public CompileStats(boolean timing) {
+		this.timing = timing;
+	}
+
+	/**
+	 * Are phases being timed (i.e., was --stats given)?
+	 */
+	public boolean isTiming() {
+		return timing;
+	}
+
+	/**
+	 * Starts timing a phase. Phases do not nest.
+	 */
+	public void begin(int phase) {
+		if (!timing) {
+			return;
+		}
+		startAlloc = allocatedBytes();
+		startCpu = cpuTime();
+		startWall = System.nanoTime();
+	}
+
+	/**
+	 * Stops timing the phase started by the matching {@link begin}.
+	 */
+	public void end(int phase) {
+		if (!timing) {
+			return;
+		}
+		long endWall = System.nanoTime();
+		long endCpu = cpuTime();
+		long endAlloc = allocatedBytes();
+		wall[phase] += endWall - startWall;
+		cpu[phase] += endCpu - startCpu;
+		alloc[phase] += endAlloc - startAlloc;
+		ran[phase] = true;
+	}
+
+	/**
+	 * Adds the counters of other, e.g. those of a child context that
+	 * worked on part of the same compilation.
+	 */
+	public void add(CompileStats other) {
+		tokens += other.tokens;
+		astNodes += other.astNodes;
+		symbols += other.symbols;
+		instructions += other.instructions;
+		if (other.peephole != null) {
+			for (int k = 0; k < other.peephole.length; k++) {
+				peepholeRemoved(k, other.peephole[k]);
+			}
+		}
+	}
+
+	/**
+	 * Records that Peephole rule k removed n instructions.
+	 */
+	public void peepholeRemoved(int k, long n) {
+		if (peephole == null) {
+			peephole = new long[Peephole.RULE_NAMES.length];
+		}
+		peephole[k] += n;
+	}
+
+	private static long cpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported()
+			? threads.getCurrentThreadCpuTime() : 0;
+	}
+
+	private static long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Prints a human-readable table of the phases that ran, then the
+	 * counters.
+	 */
+	public void print(PrintStream p) {
+		p.println(String.format("%-14s %12s %12s %14s",
+		                        "phase", "wall ms", "cpu ms", "alloc bytes"));
+		for (int k = 0; k < PHASE_NAMES.length; k++) {
+			if (ran[k]) {
+				p.println(String.format("%-14s %12.3f %12.3f %14d",
+				                        PHASE_NAMES[k], wall[k] / 1e6,
+				                        cpu[k] / 1e6, alloc[k]));
+			}
+		}
+		p.println("tokens        " + tokens);
+		p.println("AST nodes     " + astNodes);
+		p.println("symbols       " + symbols);
+		p.println("instructions  " + instructions);
+		if (peephole != null) {
+			for (int k = 0; k < peephole.length; k++) {
+				p.println(String.format("peephole %-16s %d",
+				                        Peephole.RULE_NAMES[k], peephole[k]));
+			}
+		}
+	}
+
+	/**
+	 * Prints the same information as {@link print} as one JSON object.
+	 * Times are in nanoseconds.
+	 */
+	public void printJson(PrintStream p) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"phases\":{");
+		boolean first = true;
+		for (int k = 0; k < PHASE_NAMES.length; k++) {
+			if (!ran[k]) {
+				continue;
+			}
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+			sb.append('"').append(PHASE_NAMES[k]).append("\":{")
+			  .append("\"wallNanos\":").append(wall[k])
+			  .append(",\"cpuNanos\":").append(cpu[k])
+			  .append(",\"allocBytes\":").append(alloc[k]).append('}');
+		}
+		sb.append("},\"tokens\":").append(tokens)
+		  .append(",\"astNodes\":").append(astNodes)
+		  .append(",\"symbols\":").append(symbols)
+		  .append(",\"instructions\":").append(instructions);
+		if (peephole != null) {
+			sb.append(",\"peephole\":{");
+			for (int k = 0; k < peephole.length; k++) {
+				if (k > 0) {
+					sb.append(',');
+				}
+				sb.append('"').append(Peephole.RULE_NAMES[k]).append("\":")
+				  .append(peephole[k]);
+			}
+			sb.append('}');
+		}
+		sb.append('}');
+		p.println(sb);
+	}
+}
@@ -1,10 +1,29 @@
+import java.util.*;
+
 /**
  * ErrMsg
  *
  * This class is used to generate warning and fatal error messages.
+ *
+ * Messages are printed as they are reported, except in a context that
+ * defers them (a task checking one function in parallel mode); those are
+ * printed later by {@link #printSorted}.
  */
 class ErrMsg {
-	private static boolean err = false;
+	/**
+	 * A message held back by a deferring context.
+	 */
+	static class Message {
+		final int lineNum;
+		final int charNum;
+		final String text;
+
+		Message(int lineNum, int charNum, String text) {
+			this.lineNum = lineNum;
+			this.charNum = charNum;
+			this.text = text;
+		}
+	}
 
 	/**
 	 * Generates a fatal error message.
@@ -13,8 +32,10 @@ class ErrMsg {
 	 * @param msg associated message for error
 	 */
 	static void fatal(int lineNum, int charNum, String msg) {
-		err = true;
-		System.err.println(lineNum + ":" + charNum + " ***ERROR*** " + msg);
+		CompilationContext ctx = CompilationContext.current();
+		ctx.err = true;
+		report(ctx, lineNum, charNum,
+			lineNum + ":" + charNum + " ***ERROR*** " + msg);
 	}
 
 	/**
@@ -24,14 +45,45 @@ class ErrMsg {
 	 * @param msg associated message for warning
 	 */
 	static void warn(int lineNum, int charNum, String msg) {
-		System.err.println(lineNum + ":" + charNum + " ***WARNING*** " + msg);
+		report(CompilationContext.current(), lineNum, charNum,
+			lineNum + ":" + charNum + " ***WARNING*** " + msg);
+	}
+
+	private static void report(CompilationContext ctx, int lineNum,
+	                           int charNum, String text) {
+		if (ctx.deferred != null) {
+			ctx.deferred.add(new Message(lineNum, charNum, text));
+		} else {
+			ctx.diagnostics.println(text);
+		}
+	}
+
+	/**
+	 * Prints deferred messages to the diagnostics stream of ctx, ordered by
+	 * line and then character number. Messages at the same position keep
+	 * their order in the list.
+	 */
+	static void printSorted(CompilationContext ctx, List<Message> messages) {
+		List<Message> sorted = new ArrayList<Message>(messages);
+		Collections.sort(sorted, new Comparator<Message>() {
+			public int compare(Message a, Message b) {
+				if (a.lineNum != b.lineNum) {
+					return a.lineNum < b.lineNum ? -1 : 1;
+				}
+				return a.charNum < b.charNum ? -1
+					: (a.charNum == b.charNum ? 0 : 1);
+			}
+		});
+		for (Message m : sorted) {
+			ctx.diagnostics.println(m.text);
+		}
 	}
 
 	/**
-	 * Returns the err flag.
+	 * Returns the err flag of the current compilation.
 	 */
 	static boolean getErr() {
-		return err;
+		return CompilationContext.current().err;
 	}
 
 }
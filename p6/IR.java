@@ -0,0 +1,449 @@
+import java.util.*;
+
+/**
+ * IR
+ *
+ * The three-address code of one function, lowered from its AST (see the
+ * lower methods in ast.java) and turned into MIPS by {@link MipsEmitter}.
+ *
+ * Instruction i is op[i] with operands dst[i], a[i] and b[i], held in
+ * parallel int arrays rather than one object per instruction. What an
+ * operand means depends on the opcode (see the table below): a virtual
+ * register, an immediate, a frame offset, a label number or an index into
+ * the symbol or string table. Virtual registers are numbered from 0 and
+ * are not limited in number; named variables stay in memory and are read
+ * and written by explicit loads and stores.
+ *
+ * Control flow is explicit: LABEL instructions mark jump targets, and
+ * every transfer of control is a JUMP, a conditional branch, a RET or a
+ * TAILCALL.
+ * {@link #finish} splits the code into basic blocks.
+ *
+ * Two IRs are equal if they are the same code for a function of the same
+ * name and frame, so code can be cached and compared per function.
+ */
+public class IR {
+	// opcodes                       dst     a          b
+	static final int LI = 0;      // reg     imm
+	static final int LA = 1;      // reg     string
+	static final int MOVE = 2;    // reg     reg
+	static final int ADD = 3;     // reg     reg        reg
+	static final int SUB = 4;     // reg     reg        reg
+	static final int MUL = 5;     // reg     reg        reg
+	static final int DIV = 6;     // reg     reg        reg
+	static final int AND = 7;     // reg     reg        reg
+	static final int OR = 8;      // reg     reg        reg
+	static final int SEQ = 9;     // reg     reg        reg
+	static final int SNE = 10;    // reg     reg        reg
+	static final int SLT = 11;    // reg     reg        reg
+	static final int SGT = 12;    // reg     reg        reg
+	static final int SLE = 13;    // reg     reg        reg
+	static final int SGE = 14;    // reg     reg        reg
+	static final int ADDI = 15;   // reg     reg        imm
+	static final int NEG = 16;    // reg     reg
+	static final int NOT = 17;    // reg     reg
+	static final int LDL = 18;    // reg     offset            ($fp)
+	static final int STL = 19;    //         reg        offset ($fp)
+	static final int LDG = 20;    // reg     symbol
+	static final int STG = 21;    //         reg        symbol
+	static final int ARG = 22;    //         reg                (push)
+	static final int CALL = 23;   // reg/-1  symbol
+	static final int RET = 24;    //         reg/-1
+	static final int LABEL = 25;  //         label
+	static final int JUMP = 26;   //         label
+	static final int BEQZ = 27;   //         reg        label
+	static final int BNEZ = 28;   //         reg        label
+	static final int READ = 29;   // reg
+	static final int WRITEI = 30; //         reg
+	static final int WRITES = 31; //         reg
+	static final int BEQ = 32;    // label   reg        reg
+	static final int BNE = 33;    // label   reg        reg
+	static final int BLT = 34;    // label   reg        reg
+	static final int BGT = 35;    // label   reg        reg
+	static final int BLE = 36;    // label   reg        reg
+	static final int BGE = 37;    // label   reg        reg
+	static final int TAILCALL = 38; //       symbol     arg bytes
+	static final int MULI = 39;   // reg     reg        imm  (no mul)
+	static final int DIVI = 40;   // reg     reg        imm  (no div)
+
+	// for ADD..SGE, the MIPS instruction (op dest, left, right), and for
+	// BEQ..BGE the MIPS branch (op left, right, label)
+	static final String[] OP_NAMES = {
+		"li", "la", "move", "add", "sub", "mul", "div", "and", "or",
+		"seq", "sne", "slt", "sgt", "sle", "sge", "addi", "neg", "not",
+		"ldl", "stl", "ldg", "stg", "arg", "call", "ret", "label", "jump",
+		"beqz", "bnez", "read", "writei", "writes", "beq", "bne", "blt",
+		"bgt", "ble", "bge", "tailcall", "muli", "divi"
+	};
+
+	// the comparison SEQ..SGE that is true when the one at the same
+	// position is false
+	private static final int[] NEGATED = { SNE, SEQ, SGE, SLE, SGT, SLT };
+
+	// which operands are virtual registers: A and B are read, DST written
+	static final int A = 1;
+	static final int B = 2;
+	static final int DST = 4;
+	private static final int[] REGS = {
+		DST, DST, DST | A, DST | A | B, DST | A | B, DST | A | B,
+		DST | A | B, DST | A | B, DST | A | B, DST | A | B, DST | A | B,
+		DST | A | B, DST | A | B, DST | A | B, DST | A | B, DST | A,
+		DST | A, DST | A, DST, A, DST, A, A, DST, A, 0, 0, A, A, DST, A, A,
+		A | B, A | B, A | B, A | B, A | B, A | B, 0, DST | A, DST | A
+	};
+
+	final String name;
+	final int paramSize;
+	final int localSize;
+
+	int[] op = new int[64];
+	int[] dst = new int[64];
+	int[] a = new int[64];
+	int[] b = new int[64];
+	int size = 0;
+
+	private int regCount = 0;
+	private int labelCount = 0;
+
+	// names of globals and functions, as they appear in the assembly
+	private final List<String> symbols = new ArrayList<String>();
+	private final Map<String, Integer> symbolIndex =
+		new HashMap<String, Integer>();
+
+	// string literals, quotes and escapes included
+	private final List<String> strings = new ArrayList<String>();
+
+	// first instruction of each basic block, then size (set by finish)
+	private int[] blockStart;
+
+	/**
+	 * @param name the function's name in the source
+	 * @param paramSize bytes of parameters
+	 * @param localSize bytes of locals
+	 */
+	public IR(String name, int paramSize, int localSize) {
+		this.name = name;
+		this.paramSize = paramSize;
+		this.localSize = localSize;
+	}
+
+	// **********************************************************************
+	// building
+	// **********************************************************************
+
+	public int newReg() {
+		return regCount++;
+	}
+
+	public int newLabel() {
+		return labelCount++;
+	}
+
+	public int regCount() {
+		return regCount;
+	}
+
+	public int labelCount() {
+		return labelCount;
+	}
+
+	/**
+	 * Appends an instruction. Unused operands should be -1.
+	 */
+	public void emit(int opcode, int d, int x, int y) {
+		if (size == op.length) {
+			int n = size * 2;
+			op = Arrays.copyOf(op, n);
+			dst = Arrays.copyOf(dst, n);
+			a = Arrays.copyOf(a, n);
+			b = Arrays.copyOf(b, n);
+		}
+		op[size] = opcode;
+		dst[size] = d;
+		a[size] = x;
+		b[size] = y;
+		size++;
+		blockStart = null;
+	}
+
+	/**
+	 * Appends an instruction that computes a new virtual register from x
+	 * and y, and returns that register.
+	 */
+	public int compute(int opcode, int x, int y) {
+		int d = newReg();
+		emit(opcode, d, x, y);
+		return d;
+	}
+
+	/**
+	 * The index of name (a global or function label) in the symbol table,
+	 * adding it if necessary.
+	 */
+	public int symbol(String name) {
+		Integer k = symbolIndex.get(name);
+		if (k == null) {
+			k = symbols.size();
+			symbols.add(name);
+			symbolIndex.put(name, k);
+		}
+		return k;
+	}
+
+	public String symbolName(int k) {
+		return symbols.get(k);
+	}
+
+	/**
+	 * Adds a string literal (as written in the source) to the string
+	 * table and returns its index.
+	 */
+	public int string(String literal) {
+		strings.add(literal);
+		return strings.size() - 1;
+	}
+
+	public String stringLiteral(int k) {
+		return strings.get(k);
+	}
+
+	// **********************************************************************
+	// operands
+	// **********************************************************************
+
+	/**
+	 * Does instruction i read operand a (or b) as a virtual register?
+	 */
+	boolean readsA(int i) {
+		return (REGS[op[i]] & A) != 0 && a[i] >= 0;
+	}
+
+	boolean readsB(int i) {
+		return (REGS[op[i]] & B) != 0;
+	}
+
+	/**
+	 * Does instruction i write virtual register dst[i]?
+	 */
+	boolean writes(int i) {
+		return (REGS[op[i]] & DST) != 0 && dst[i] >= 0;
+	}
+
+	/**
+	 * Does control never fall through instruction i?
+	 */
+	boolean isJump(int i) {
+		return op[i] == JUMP || op[i] == RET || op[i] == TAILCALL;
+	}
+
+	/**
+	 * The label instruction i may branch to, or -1.
+	 */
+	int target(int i) {
+		switch (op[i]) {
+		case JUMP:
+			return a[i];
+		case BEQZ:
+		case BNEZ:
+			return b[i];
+		case BEQ:
+		case BNE:
+		case BLT:
+		case BGT:
+		case BLE:
+		case BGE:
+			return dst[i];
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Is op one of the comparisons SEQ..SGE?
+	 */
+	static boolean isCompare(int op) {
+		return op >= SEQ && op <= SGE;
+	}
+
+	/**
+	 * The branch (BEQ..BGE) that is taken when the comparison compare
+	 * (SEQ..SGE) yields jumpIf.
+	 */
+	static int branch(int compare, boolean jumpIf) {
+		if (!jumpIf) {
+			compare = NEGATED[compare - SEQ];
+		}
+		return compare - SEQ + BEQ;
+	}
+
+	// **********************************************************************
+	// basic blocks
+	// **********************************************************************
+
+	/**
+	 * Splits the instructions into basic blocks: one starts at every
+	 * label and after every jump, branch and return.
+	 */
+	public void finish() {
+		int[] starts = new int[16];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			boolean leader = i == 0 || op[i] == LABEL || target(i - 1) >= 0
+			                 || isJump(i - 1);
+			if (leader) {
+				if (n + 1 >= starts.length) {
+					starts = Arrays.copyOf(starts, starts.length * 2);
+				}
+				starts[n++] = i;
+			}
+		}
+		starts[n] = size;
+		blockStart = Arrays.copyOf(starts, n + 1);
+	}
+
+	public int blockCount() {
+		return blocks().length - 1;
+	}
+
+	/**
+	 * The first instruction of block k.
+	 */
+	public int blockStart(int k) {
+		return blocks()[k];
+	}
+
+	/**
+	 * One past the last instruction of block k.
+	 */
+	public int blockEnd(int k) {
+		return blocks()[k + 1];
+	}
+
+	private int[] blocks() {
+		if (blockStart == null) {
+			finish();
+		}
+		return blockStart;
+	}
+
+	// **********************************************************************
+	// comparing and printing
+	// **********************************************************************
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof IR)) {
+			return false;
+		}
+		IR other = (IR) o;
+		if (size != other.size || paramSize != other.paramSize
+		    || localSize != other.localSize || !name.equals(other.name)
+		    || !symbols.equals(other.symbols)
+		    || !strings.equals(other.strings)) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (op[i] != other.op[i] || dst[i] != other.dst[i]
+			    || a[i] != other.a[i] || b[i] != other.b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = name.hashCode();
+		for (int i = 0; i < size; i++) {
+			h = 31 * h + op[i];
+			h = 31 * h + dst[i];
+			h = 31 * h + a[i];
+			h = 31 * h + b[i];
+		}
+		return h;
+	}
+
+	/**
+	 * A listing of the code, one instruction per line, with virtual
+	 * registers written %n and labels Ln.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(name).append(" (params ").append(paramSize)
+		  .append(", locals ").append(localSize).append(")\n");
+		for (int i = 0; i < size; i++) {
+			if (op[i] == LABEL) {
+				sb.append('L').append(a[i]).append(":\n");
+				continue;
+			}
+			sb.append("    ").append(OP_NAMES[op[i]]);
+			String sep = " ";
+			if (writes(i)) {
+				sb.append(sep).append('%').append(dst[i]);
+				sep = ", ";
+			}
+			switch (op[i]) {
+			case LI:
+				sb.append(sep).append(a[i]);
+				break;
+			case LA:
+				sb.append(sep).append(strings.get(a[i]));
+				break;
+			case ADDI:
+			case MULI:
+			case DIVI:
+				sb.append(sep).append('%').append(a[i]).append(", ")
+				  .append(b[i]);
+				break;
+			case LDL:
+				sb.append(sep).append(a[i]).append("($fp)");
+				break;
+			case STL:
+				sb.append(sep).append('%').append(a[i]).append(", ")
+				  .append(b[i]).append("($fp)");
+				break;
+			case LDG:
+			case CALL:
+				sb.append(sep).append(symbols.get(a[i]));
+				break;
+			case TAILCALL:
+				sb.append(sep).append(symbols.get(a[i])).append(", ")
+				  .append(b[i]);
+				break;
+			case STG:
+				sb.append(sep).append('%').append(a[i]).append(", ")
+				  .append(symbols.get(b[i]));
+				break;
+			case JUMP:
+				sb.append(sep).append('L').append(a[i]);
+				break;
+			case BEQZ:
+			case BNEZ:
+				sb.append(sep).append('%').append(a[i]).append(", L")
+				  .append(b[i]);
+				break;
+			case BEQ:
+			case BNE:
+			case BLT:
+			case BGT:
+			case BLE:
+			case BGE:
+				sb.append(sep).append('%').append(a[i]).append(", %")
+				  .append(b[i]).append(", L").append(dst[i]);
+				break;
+			default:
+				if (readsA(i)) {
+					sb.append(sep).append('%').append(a[i]);
+					sep = ", ";
+				}
+				if (readsB(i)) {
+					sb.append(sep).append('%').append(b[i]);
+				}
+				break;
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,133 @@
+import java.util.*;
+
+/**
+ * Inliner
+ *
+ * Replaces calls to small functions by copies of their bodies (--inline).
+ * Functions are processed in declaration order, which is also the order in
+ * which they can call each other, so every callee has had its own calls
+ * inlined before it is copied into a caller.
+ *
+ * A function can be inlined if it is not main, does not call itself, has
+ * no return statement other than a final one, and has at most maxSize AST
+ * nodes in its body (see FnDeclNode.nodeCount). Its parameters and locals
+ * become new locals of the caller: each argument is assigned to the slot of
+ * its parameter, then the body runs, and the value of the final return is
+ * the value of the call (see InlineExpNode). A caller's frame grows by the
+ * parameter and local sizes of each function inlined into it, up to
+ * frameBudget bytes.
+ */
+public class Inliner {
+	// default --inline size limit, in AST nodes
+	public static final int DEFAULT_SIZE = 30;
+
+	// default --inline-frame budget, in bytes
+	public static final int DEFAULT_FRAME_BUDGET = 128;
+
+	private final int maxSize;
+
+	// most bytes of locals inlining may add to one function
+	private final int frameBudget;
+
+	// the functions declared so far that may be inlined
+	private final Map<TSym, FnDeclNode> functions =
+		new HashMap<TSym, FnDeclNode>();
+
+	// the function calls are being inlined into, and its size of locals
+	// before any were added
+	private FnSym caller;
+	private int localSize;
+
+	// while a callee is copied: its variables -> their slots in the caller
+	private Map<TSym, TSym> renamed;
+
+	public Inliner(int maxSize, int frameBudget) {
+		this.maxSize = maxSize;
+		this.frameBudget = frameBudget;
+	}
+
+	/**
+	 * Makes fn, whose own calls have been inlined, a candidate for the
+	 * functions declared after it.
+	 */
+	public void add(FnDeclNode fn) {
+		if (!fn.isMain() && !fn.isRecursive() && fn.nodeCount() <= maxSize) {
+			functions.put(fn.sym(), fn);
+		}
+	}
+
+	/**
+	 * Starts inlining calls into fn.
+	 */
+	public void enter(FnSym fn) {
+		caller = fn;
+		localSize = fn.getLocalSize();
+	}
+
+	/**
+	 * Done with the current caller.
+	 */
+	public void leave() {
+		caller = null;
+	}
+
+	/**
+	 * The inlined body of a call to callee with arguments args, or null if
+	 * the call is to stay a call. A callee that turns out not to be
+	 * inlinable is not tried again.
+	 */
+	public InlineExpNode expand(TSym callee, ExpListNode args) {
+		FnDeclNode fn = functions.get(callee);
+		if (fn == null) {
+			return null;
+		}
+		FnSym sym = (FnSym) callee;
+		int start = caller.getLocalSize();
+		if (start - localSize + sym.getParamSize() + sym.getLocalSize()
+		    > frameBudget) {
+			return null;
+		}
+
+		renamed = new HashMap<TSym, TSym>();
+		InlineExpNode body = fn.expand(args, this);
+		renamed = null;
+
+		if (body == null) {
+			// nothing uses the slots it was given
+			functions.remove(callee);
+			caller.setLocalSize(start);
+		}
+		return body;
+	}
+
+	/**
+	 * The symbol a copied variable refers to: globals and functions stay
+	 * the same, while the callee's parameters and locals are given slots
+	 * in the caller's frame. Returns null for struct variables, which are
+	 * not copied.
+	 */
+	public TSym rename(TSym sym) {
+		if (sym.isGlobal() || sym instanceof FnSym) {
+			return sym;
+		}
+		if (sym instanceof StructSym) {
+			return null;
+		}
+		TSym slot = renamed.get(sym);
+		if (slot == null) {
+			slot = caller.addLocal(sym.getType());
+			renamed.put(sym, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * A new local of the current caller, e.g. for a value that is
+	 * computed only for its side effects.
+	 */
+	public IdNode temp(Type type) {
+		IdNode id = new IdNode(0, 0, "_inline");
+		id.link(caller.addLocal(type));
+		return id;
+	}
+}
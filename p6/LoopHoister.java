@@ -0,0 +1,142 @@
+import java.util.*;
+
+/**
+ * LoopHoister
+ *
+ * Loop-invariant code motion (--licm): an expression that has the same
+ * value on every iteration of a while or repeat loop is computed once,
+ * before the loop, into a new local of the function, and the loop reads
+ * that local instead.
+ *
+ * An expression is invariant in a loop if it only reads variables that
+ * the loop (its condition included) does not assign by =, ++, -- or cin,
+ * and it can neither have side effects nor trap: no calls, assignments, or
+ * divisions by anything but a nonzero literal. A loop that calls a
+ * function may change any global, so globals are only invariant in loops
+ * without calls.
+ *
+ * Loops are entered outermost first, and each expression moves as far out
+ * as it is invariant (see ExpNode.hoist): in nested loops, the parts that
+ * do not depend on the outer loop's variables go in front of the outer
+ * loop, and the rest in front of the inner one. Code inside an if (as
+ * opposed to its condition) may not run on every iteration, so it is only
+ * moved in front of loops inside the same branch; otherwise a rarely taken
+ * branch would make every entry to the loop slower. Only operators are
+ * moved; a variable or literal is as cheap to read as the local that
+ * would hold it.
+ */
+public class LoopHoister {
+	// the function being optimized, which gets the new locals
+	private FnSym fn;
+
+	// the loops around the statement being processed, outermost first
+	private final List<Loop> loops = new ArrayList<Loop>();
+
+	// the outermost loop that code being processed may move in front of:
+	// inside an if, only loops in the same branch (see enterBranch)
+	private int floor;
+
+	private static class Loop {
+		// the variables assigned in the loop
+		final Set<TSym> assigned = new HashSet<TSym>();
+
+		// does the loop call any function?
+		boolean calls;
+
+		// the statements to run before the loop
+		final List<StmtNode> preheader = new ArrayList<StmtNode>();
+	}
+
+	/**
+	 * Starts on the loops of fn.
+	 */
+	public void enter(FnSym fn) {
+		this.fn = fn;
+	}
+
+	/**
+	 * Starts on the expressions inside loop, which is nested in the loops
+	 * entered so far.
+	 */
+	public void enterLoop(StmtNode loop) {
+		Loop l = new Loop();
+		loop.addAssigned(l.assigned);
+		Set<TSym> calls = new HashSet<TSym>();
+		loop.addCalls(calls);
+		l.calls = !calls.isEmpty();
+		loops.add(l);
+	}
+
+	/**
+	 * Done with the innermost loop: the statements that compute what was
+	 * hoisted out of it, to be placed right before it.
+	 */
+	public List<StmtNode> leaveLoop() {
+		return loops.remove(loops.size() - 1).preheader;
+	}
+
+	/**
+	 * The number of loops around the expressions being processed; an
+	 * expression at this level cannot be hoisted.
+	 */
+	public int depth() {
+		return loops.size();
+	}
+
+	/**
+	 * The outermost loop that sym is invariant in: one more than the
+	 * innermost loop that assigns it, or 0 if none does.
+	 */
+	public int level(TSym sym) {
+		for (int i = loops.size() - 1; i >= 0; i--) {
+			Loop loop = loops.get(i);
+			if (loop.assigned.contains(sym) || (loop.calls && sym.isGlobal())) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Starts on a branch of an if, which may only move code in front of
+	 * the loops inside it. Returns the previous limit, for leaveBranch.
+	 */
+	public int enterBranch() {
+		int outer = floor;
+		floor = loops.size();
+		return outer;
+	}
+
+	/**
+	 * Done with a branch: outer is what enterBranch returned.
+	 */
+	public void leaveBranch(int outer) {
+		floor = outer;
+	}
+
+	/**
+	 * The loop to move an expression that is invariant from the given
+	 * level on in front of, given the branch being processed.
+	 */
+	public int target(int level) {
+		return Math.max(level, floor);
+	}
+
+	/**
+	 * Moves exp in front of the loop at the given level (see level),
+	 * assigning it to a new local, and returns a read of that local.
+	 */
+	public IdNode hoist(ExpNode exp, int level) {
+		TSym sym = fn.addLocal(exp.typeCheck());
+		loops.get(level).preheader.add(new AssignStmtNode(
+				new AssignNode(local(exp, sym), exp)));
+		return local(exp, sym);
+	}
+
+	// a use of sym at the position of exp
+	private static IdNode local(ExpNode exp, TSym sym) {
+		IdNode id = new IdNode(exp.lineNum(), exp.charNum(), "_licm");
+		id.link(sym);
+		return id;
+	}
+}
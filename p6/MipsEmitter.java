@@ -0,0 +1,392 @@
+import java.util.*;
+
+/**
+ * MipsEmitter
+ *
+ * Writes the MIPS code for one function's {@link IR}, through
+ * {@link Codegen} (so it lands in the current compilation's output and is
+ * counted like any other code).
+ *
+ * Virtual registers are mapped to $t0..$t7 by a linear scan over their
+ * live ranges, in instruction order; a range that reaches into a loop is
+ * stretched to the loop's backward branch. A virtual register that is live
+ * across a call (the callee may change any temporary), or for which no
+ * register is free, gets a slot in the frame instead, below the locals;
+ * $t8 and $t9 are the scratch registers for reaching those.
+ *
+ * A function without calls (other than tail calls, which leave $ra
+ * alone) does not save $ra. If it also has no locals
+ * and no frame slots, it gets no frame at all: $sp does not move while it
+ * runs, so its parameters are addressed off $sp and $fp is left alone.
+ */
+public class MipsEmitter {
+	// registers handed out to virtual registers
+	private static final int ALLOCATABLE = 8;
+
+	private static final String SCRATCH1 = Codegen.TEMPS[8];
+	private static final String SCRATCH2 = Codegen.TEMPS[9];
+
+	private final IR ir;
+	private final String labelPrefix;
+	private final StringPool strings;
+
+	// where each virtual register lives: a register number 0..7 or, if
+	// negative, frame slot -(loc+1)
+	private int[] loc;
+	private int slots = 0;
+
+	// no calls; and no frame (see above)
+	private boolean leaf;
+	private boolean frameless;
+
+	// bytes of arguments pushed so far for the next (tail) call; without
+	// a frame, $sp-relative offsets must allow for them
+	private int pushed = 0;
+
+	private MipsEmitter(IR ir) {
+		this.ir = ir;
+		CompilationContext ctx = CompilationContext.current();
+		this.labelPrefix = ctx.labelPrefix;
+		this.strings = ctx.strings;
+	}
+
+	/**
+	 * Writes ir as a complete function: label, prologue, body, epilogue.
+	 */
+	public static void emit(IR ir) {
+		MipsEmitter e = new MipsEmitter(ir);
+		e.allocate();
+		e.emitFunction();
+		CompilationContext.current().currLabel += ir.labelCount();
+	}
+
+	// **********************************************************************
+	// register allocation
+	// **********************************************************************
+
+	private void allocate() {
+		int n = ir.regCount();
+		int[] start = new int[n];
+		int[] end = new int[n];
+		Arrays.fill(start, -1);
+		Arrays.fill(end, -1);
+		for (int i = 0; i < ir.size; i++) {
+			if (ir.readsA(i)) {
+				touch(start, end, ir.a[i], i);
+			}
+			if (ir.readsB(i)) {
+				touch(start, end, ir.b[i], i);
+			}
+			if (ir.writes(i)) {
+				touch(start, end, ir.dst[i], i);
+			}
+		}
+		extendOverLoops(start, end);
+
+		// calls[i] = number of calls before instruction i
+		int[] calls = new int[ir.size + 1];
+		for (int i = 0; i < ir.size; i++) {
+			calls[i + 1] = calls[i] + (ir.op[i] == IR.CALL ? 1 : 0);
+		}
+
+		// ranges in order of their start; a register is freed once the
+		// instruction that ends its range has been passed
+		Integer[] order = new Integer[n];
+		for (int v = 0; v < n; v++) {
+			order[v] = v;
+		}
+		final int[] starts = start;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer x, Integer y) {
+				return Integer.compare(starts[x], starts[y]);
+			}
+		});
+
+		leaf = calls[ir.size] == 0;
+
+		loc = new int[n];
+		int[] busyUntil = new int[ALLOCATABLE];
+		Arrays.fill(busyUntil, -1);
+		for (int k = 0; k < n; k++) {
+			int v = order[k];
+			if (start[v] < 0) {
+				continue;
+			}
+			int r = -1;
+			if (calls[end[v]] - calls[start[v] + 1] == 0) {
+				for (int j = 0; j < ALLOCATABLE; j++) {
+					// a register read by the instruction that defines v may
+					// also hold v
+					if (busyUntil[j] <= start[v]) {
+						r = j;
+						break;
+					}
+				}
+			}
+			if (r >= 0) {
+				loc[v] = r;
+				busyUntil[r] = end[v];
+			} else {
+				loc[v] = -(++slots);
+			}
+		}
+	}
+
+	private static void touch(int[] start, int[] end, int v, int i) {
+		if (start[v] < 0) {
+			start[v] = i;
+		}
+		end[v] = i;
+	}
+
+	/**
+	 * A value live at the top of a loop must survive the whole loop, up
+	 * to the branch back.
+	 */
+	private void extendOverLoops(int[] start, int[] end) {
+		int[] labelAt = new int[ir.labelCount()];
+		for (int i = 0; i < ir.size; i++) {
+			if (ir.op[i] == IR.LABEL) {
+				labelAt[ir.a[i]] = i;
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < ir.size; i++) {
+				int t = ir.target(i);
+				if (t < 0 || labelAt[t] > i) {
+					continue;
+				}
+				int top = labelAt[t];
+				for (int v = 0; v < start.length; v++) {
+					if (start[v] >= 0 && start[v] < top && end[v] >= top
+					    && end[v] < i) {
+						end[v] = i;
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+
+	// **********************************************************************
+	// emission
+	// **********************************************************************
+
+	private void emitFunction() {
+		boolean isMain = ir.name.equals("main");
+		String exit = "_" + ir.name + "_Exit";
+
+		Codegen.generate(".text");
+		if (isMain) {
+			Codegen.generate(".globl main");
+			Codegen.genLabel("main");
+		} else {
+			Codegen.genLabel("_" + ir.name);
+		}
+		frameless = leaf && ir.localSize == 0 && slots == 0;
+		if (!frameless) {
+			Codegen.genEnter(ir.paramSize, ir.localSize + 4 * slots, leaf);
+		}
+		for (int i = 0; i < ir.size; i++) {
+			emitInstruction(i, exit);
+		}
+		Codegen.genLabel(exit);
+		if (frameless) {
+			Codegen.genFramelessExit(ir.paramSize);
+		} else {
+			Codegen.genExit(ir.paramSize, leaf);
+		}
+	}
+
+	private void emitInstruction(int i, String exit) {
+		int op = ir.op[i];
+		int a = ir.a[i];
+		int b = ir.b[i];
+		String d;
+
+		switch (op) {
+		case IR.LI:
+			d = dest(i);
+			Codegen.generate("li", d, a);
+			store(i, d);
+			break;
+		case IR.LA:
+			d = dest(i);
+			Codegen.generate("la", d, strings.label(ir.stringLiteral(a)));
+			store(i, d);
+			break;
+		case IR.MOVE:
+			d = dest(i);
+			Codegen.generate("move", d, use(a, SCRATCH1));
+			store(i, d);
+			break;
+		case IR.ADDI:
+			d = dest(i);
+			Codegen.generate("add", d, use(a, SCRATCH1), b);
+			store(i, d);
+			break;
+		case IR.MULI:
+			d = dest(i);
+			Codegen.genMulConst(d, use(a, SCRATCH1), b, SCRATCH2);
+			store(i, d);
+			break;
+		case IR.DIVI:
+			d = dest(i);
+			Codegen.genDivConst(d, use(a, SCRATCH1), b, SCRATCH2);
+			store(i, d);
+			break;
+		case IR.NEG:
+			d = dest(i);
+			Codegen.generate("neg", d, use(a, SCRATCH1));
+			store(i, d);
+			break;
+		case IR.NOT:
+			d = dest(i);
+			Codegen.generate("xori", d, use(a, SCRATCH1), 1);
+			store(i, d);
+			break;
+		case IR.LDL:
+			d = dest(i);
+			Codegen.generateIndexed("lw", d, frameBase(), frameOffset(a));
+			store(i, d);
+			break;
+		case IR.STL:
+			Codegen.generateIndexed("sw", use(a, SCRATCH1), frameBase(),
+			                        frameOffset(b));
+			break;
+		case IR.LDG:
+			d = dest(i);
+			Codegen.generate("lw", d, ir.symbolName(a));
+			store(i, d);
+			break;
+		case IR.STG:
+			Codegen.generate("sw", use(a, SCRATCH1), ir.symbolName(b));
+			break;
+		case IR.ARG:
+			Codegen.genPush(use(a, SCRATCH1));
+			pushed += 4;
+			break;
+		case IR.CALL:
+			Codegen.generate("jal", ir.symbolName(a));
+			pushed = 0;
+			if (ir.writes(i)) {
+				d = dest(i);
+				Codegen.generate("move", d, Codegen.V0);
+				store(i, d);
+			}
+			break;
+		case IR.TAILCALL:
+			Codegen.genTailCall(ir.symbolName(a), b, ir.paramSize, leaf,
+			                    frameless);
+			pushed = 0;
+			break;
+		case IR.RET:
+			if (a >= 0) {
+				Codegen.generate("move", Codegen.V0, use(a, SCRATCH1));
+			}
+			Codegen.generate("j", exit);
+			break;
+		case IR.LABEL:
+			Codegen.genLabel(label(a));
+			break;
+		case IR.JUMP:
+			Codegen.generate("j", label(a));
+			break;
+		case IR.BEQZ:
+			Codegen.generate("beqz", use(a, SCRATCH1), label(b));
+			break;
+		case IR.BNEZ:
+			Codegen.generate("bnez", use(a, SCRATCH1), label(b));
+			break;
+		case IR.BEQ:
+		case IR.BNE:
+		case IR.BLT:
+		case IR.BGT:
+		case IR.BLE:
+		case IR.BGE:
+			Codegen.generate(IR.OP_NAMES[op], use(a, SCRATCH1),
+			                 use(b, SCRATCH2), label(ir.dst[i]));
+			break;
+		case IR.READ:
+			Codegen.generate("li", Codegen.V0, 5);
+			Codegen.generate("syscall");
+			d = dest(i);
+			Codegen.generate("move", d, Codegen.V0);
+			store(i, d);
+			break;
+		case IR.WRITEI:
+		case IR.WRITES:
+			Codegen.generate("move", Codegen.A0, use(a, SCRATCH1));
+			Codegen.generate("li", Codegen.V0, op == IR.WRITEI ? 1 : 4);
+			Codegen.generate("syscall");
+			break;
+		default:
+			if (op >= IR.ADD && op <= IR.SGE) {
+				String x = use(a, SCRATCH1);
+				String y = use(b, SCRATCH2);
+				d = dest(i);
+				Codegen.generate(IR.OP_NAMES[op], d, x, y);
+				store(i, d);
+				break;
+			}
+			System.err.println("Unexpected IR opcode " + op
+			                   + " in MipsEmitter.emitInstruction");
+			System.exit(-1);
+		}
+	}
+
+	private String label(int k) {
+		return labelPrefix + k;
+	}
+
+	/**
+	 * The register that variables are addressed off, and where offset
+	 * from $fp is relative to it: without a frame $fp would have been
+	 * $sp + paramSize, before any arguments were pushed.
+	 */
+	private String frameBase() {
+		return frameless ? Codegen.SP : Codegen.FP;
+	}
+
+	private int frameOffset(int offset) {
+		return frameless ? offset + ir.paramSize + pushed : offset;
+	}
+
+	private int slotOffset(int v) {
+		int slot = -loc[v] - 1;
+		return -(ir.paramSize + 8 + ir.localSize + 4 * slot);
+	}
+
+	/**
+	 * The register holding v, loading it into scratch first if v lives in
+	 * the frame.
+	 */
+	private String use(int v, String scratch) {
+		if (loc[v] >= 0) {
+			return Codegen.TEMPS[loc[v]];
+		}
+		Codegen.generateIndexed("lw", scratch, Codegen.FP, slotOffset(v));
+		return scratch;
+	}
+
+	/**
+	 * The register to compute instruction i's result in.
+	 */
+	private String dest(int i) {
+		int v = ir.dst[i];
+		return loc[v] >= 0 ? Codegen.TEMPS[loc[v]] : SCRATCH1;
+	}
+
+	/**
+	 * Writes instruction i's result, computed in reg, to its frame slot if
+	 * it has one.
+	 */
+	private void store(int i, String reg) {
+		int v = ir.dst[i];
+		if (loc[v] < 0) {
+			Codegen.generateIndexed("sw", reg, Codegen.FP, slotOffset(v));
+		}
+	}
+}
@@ -1,4 +1,5 @@
 import java.io.*;
+import java.util.*;
 
 import java_cup.runtime.*;
 
@@ -9,22 +10,77 @@ import java_cup.runtime.*;
  *    1. the file to be parsed
  *    2. the MIPS output file
  *
+ * With --stats (or --stats=json) before the file names, the time and
+ * memory spent in each phase are printed to standard output. With
+ * --parallel, several functions are type checked, and code is generated
+ * for several functions, at once; type errors are then reported in order
+ * of position. With --registers[=N], expressions are evaluated in up to N
+ * (default and at most 10) temporary registers rather than on the stack.
+ * With --peephole, the code of each function is cleaned up by the
+ * {@link Peephole} optimizer. With --ir, each function is lowered to
+ * three-address code ({@link IR}) and the MIPS is written from that.
+ * With --fold, constant expressions are folded and trivial arithmetic
+ * and logic simplified before code generation. With --dce, dead code is
+ * removed: statements after a return, branches and loops whose condition
+ * is a literal, and functions that main never reaches. With --inline[=N],
+ * calls to functions of at most N (default 30) AST nodes are replaced by
+ * their bodies (see {@link Inliner}) before any folding; --inline-frame=N
+ * limits how many bytes (default 128) that may add to a function's frame.
+ * With --licm, expressions that do not change in a while or repeat loop
+ * are computed once before it (see {@link LoopHoister}). With
+ * --unroll[=N], a repeat loop with a literal count runs N (default 4)
+ * copies of its body per iteration. With --cse, an expression computed
+ * again in straight-line code, with operands that have not changed,
+ * reuses the earlier value (see {@link ValueNumbering}).
+ *
+ * Alternatively, "--batch <dir|list>" compiles many files in one JVM
+ * (see {@link BatchCompiler}), with the same options other than --stats;
+ * "--server [port] [--max-source=N]" starts a resident compile server and
+ * "--client <infile> <outfile> [port]" compiles through it (see
+ * {@link CompileServer}).
+ *
  * The program opens the two files, creates a scanner and a parser, and
  * calls the parser.  If the parse is successful, then it will call name
  * analysis and type checking routines. If there is no error at the end,
  * it will generate MIPS code to the output file.
+ *
+ * All per-compilation state lives in a {@link CompilationContext}, so a
+ * client may run several P6 instances concurrently on different threads.
  */
 public class P6 {
-	FileReader inFile;
-	private PrintWriter outFile;
+	Reader inFile;
+	private SourceBuffer source;
+	private AsmWriter outFile;
+	private String outName = "output";
+	private PrintStream diagnostics = System.err;
+	private boolean timing = false;
+	private boolean statsJson = false;
+	private boolean parallel = false;
+	private int registers = 0;
+	private boolean peephole = false;
+	private boolean ir = false;
+	private boolean fold = false;
+	private boolean dce = false;
+	private int inline = 0;
+	private int inlineFrame = Inliner.DEFAULT_FRAME_BUDGET;
+	private boolean licm = false;
+	private int unroll = 1;
+	private boolean cse = false;
+	private CompileStats stats;
 	private static PrintStream outStream = System.err;
 
 	public static final int RESULT_CORRECT = 0;
 	public static final int RESULT_SYNTAX_ERROR = 1;
 	public static final int RESULT_TYPE_ERROR = 2;
 	public static final int RESULT_NAME_ANALYSIS_ERROR = 3;
+	public static final int RESULT_CODEGEN_ERROR = 4;
+	public static final int RESULT_INTERNAL_ERROR = 5;
+	public static final int RESULT_WRITE_ERROR = 6;
 	public static final int RESULT_OTHER_ERROR = -1;
 
+	// default --unroll factor
+	public static final int DEFAULT_UNROLL = 4;
+
 	/**
 	 * P6 constructor for client programs and testers. Note that
 	 * users MUST invoke {@link setInfile} and {@link setOutfile}
@@ -37,19 +93,26 @@ public class P6 {
 	 * is the command line to use. It shouldn't be invoked from
 	 * outside the class (hence the private constructor) because
 	 * it
-	 * @param args command line args array for [<infile> <outfile>]
+	 * @param args command line args array for
+	 *             [--stats[=json]] [--parallel] [--registers[=N]]
+	 *             [--peephole] [--ir] [--fold] [--dce] [--inline[=N]]
+	 *             [--inline-frame=N]
+	 *             [--licm] [--unroll[=N]] [--cse]
+	 *             <infile> <outfile>
 	 */
 	private P6(String[] args) {
 		//Parse arguments
-		if (args.length < 2) {
+		int k = parseOptions(args, 0);
+
+		if (args.length - k < 2) {
 			String msg = "please supply name of the input file "
 				+ "and name of file for assembly output.";
 			pukeAndDie(msg);
 		}
 
 		try {
-			setInfile(args[0]);
-			setOutfile(args[1]);
+			setInfile(args[k]);
+			setOutfile(args[k + 1]);
 		} catch(BadInfileException e) {
 			pukeAndDie(e.getMessage());
 		} catch(BadOutfileException e) {
@@ -58,29 +121,262 @@ public class P6 {
 	}
 
 	/**
-	 * Source code file path
+	 * Applies the options (see {@link P6(String[])}) at the start of
+	 * args[k...]; exits with a message on an unknown or malformed one.
+	 * @return the index of the first argument that is not an option
+	 */
+	int parseOptions(String[] args, int k) {
+		for (; k < args.length && args[k].startsWith("--"); k++) {
+			if (args[k].equals("--stats")) {
+				timing = true;
+			} else if (args[k].equals("--stats=json")) {
+				timing = true;
+				statsJson = true;
+			} else if (args[k].equals("--parallel")) {
+				parallel = true;
+			} else if (args[k].equals("--registers")) {
+				registers = Codegen.TEMPS.length;
+			} else if (args[k].equals("--peephole")) {
+				peephole = true;
+			} else if (args[k].equals("--ir")) {
+				ir = true;
+			} else if (args[k].equals("--fold")) {
+				fold = true;
+			} else if (args[k].equals("--dce")) {
+				dce = true;
+			} else if (args[k].equals("--inline")) {
+				inline = Inliner.DEFAULT_SIZE;
+			} else if (args[k].equals("--licm")) {
+				licm = true;
+			} else if (args[k].equals("--cse")) {
+				cse = true;
+			} else if (args[k].equals("--unroll")) {
+				unroll = DEFAULT_UNROLL;
+			} else if (args[k].startsWith("--registers=")) {
+				try {
+					setRegisters(Integer.parseInt(args[k].substring(12)));
+				} catch (IllegalArgumentException ex) {
+					pukeAndDie("bad register count in " + args[k]);
+				}
+			} else if (args[k].startsWith("--inline=")) {
+				try {
+					setInline(Integer.parseInt(args[k].substring(9)));
+				} catch (IllegalArgumentException ex) {
+					pukeAndDie("bad inline size in " + args[k]);
+				}
+			} else if (args[k].startsWith("--inline-frame=")) {
+				try {
+					setInlineFrame(Integer.parseInt(args[k].substring(15)));
+				} catch (IllegalArgumentException ex) {
+					pukeAndDie("bad inline frame size in " + args[k]);
+				}
+			} else if (args[k].startsWith("--unroll=")) {
+				try {
+					setUnroll(Integer.parseInt(args[k].substring(9)));
+				} catch (IllegalArgumentException ex) {
+					pukeAndDie("bad unroll factor in " + args[k]);
+				}
+			} else {
+				pukeAndDie("unknown option " + args[k]);
+			}
+		}
+		return k;
+	}
+
+	/**
+	 * Source code file path. The file is memory-mapped and decoded in one
+	 * go (see {@link SourceBuffer}).
 	 * @param filename path to source file
 	 */
 	public void setInfile(String filename) throws BadInfileException{
 		try {
-			inFile = new FileReader(filename);
-		} catch (FileNotFoundException ex) {
+			source = SourceBuffer.map(filename);
+			inFile = null;
+		} catch (IOException ex) {
 			throw new BadInfileException(ex, filename);
 		}
 	}
 
 	/**
-	 * Text file output
+	 * Text file output, written in large chunks through the file's channel
 	 * @param filename path to destination file
 	 */
 	public void setOutfile(String filename) throws BadOutfileException{
 		try {
-			outFile = new PrintWriter(filename);
+			outFile = new AsmWriter(
+				new FileOutputStream(filename).getChannel());
+			outName = filename;
 		} catch (FileNotFoundException ex) {
 			throw new BadOutfileException(ex, filename);
 		}
 	}
 
+	/**
+	 * Source code from an already open reader, e.g. source text
+	 * received by the compile server
+	 * @param reader source text; closed by {@link cleanup}
+	 */
+	public void setInput(Reader reader) {
+		inFile = reader;
+		source = null;
+	}
+
+	/**
+	 * Source code that is already in memory
+	 * @param text source text
+	 */
+	public void setInput(SourceBuffer text) {
+		source = text;
+		inFile = null;
+	}
+
+	/**
+	 * Assembly output to an already open writer
+	 * @param writer destination for generated code; closed by
+	 *               {@link cleanup}
+	 */
+	public void setOutput(Writer writer) {
+		outFile = new AsmWriter(writer);
+		outName = "output";
+	}
+
+	/**
+	 * Destination for error and warning messages (System.err unless
+	 * changed)
+	 * @param stream stream that receives this compilation's diagnostics
+	 */
+	public void setDiagnostics(PrintStream stream) {
+		diagnostics = stream;
+	}
+
+	/**
+	 * Time each phase of subsequent compilations (see {@link CompileStats})
+	 * @param value true to record wall time, CPU time and allocation
+	 */
+	public void setTiming(boolean value) {
+		timing = value;
+	}
+
+	/**
+	 * Process functions concurrently in the phases that support it
+	 * @param value true to use the fork/join pool
+	 */
+	public void setParallel(boolean value) {
+		parallel = value;
+	}
+
+	/**
+	 * Evaluate expressions in registers (see {@link ExpNode#codeGenReg})
+	 * @param n number of temporaries to use, 1 to 10; 0 evaluates every
+	 *          expression on the stack
+	 * @throws IllegalArgumentException if n is out of range
+	 */
+	public void setRegisters(int n) {
+		if (n < 0 || n > Codegen.TEMPS.length) {
+			throw new IllegalArgumentException("register count " + n);
+		}
+		registers = n;
+	}
+
+	/**
+	 * Run the code of each function through the {@link Peephole} optimizer
+	 * @param value true to optimize
+	 */
+	public void setPeephole(boolean value) {
+		peephole = value;
+	}
+
+	/**
+	 * Generate code through the three-address {@link IR}
+	 * @param value true to lower each function to IR first
+	 */
+	public void setIR(boolean value) {
+		ir = value;
+	}
+
+	/**
+	 * Fold constants and simplify expressions before generating code
+	 * (see {@link ExpNode#fold})
+	 * @param value true to fold
+	 */
+	public void setFold(boolean value) {
+		fold = value;
+	}
+
+	/**
+	 * Remove dead statements and unreachable functions before generating
+	 * code (see {@link ProgramNode#eliminateDeadCode})
+	 * @param value true to eliminate dead code
+	 */
+	public void setDeadCode(boolean value) {
+		dce = value;
+	}
+
+	/**
+	 * Inline calls to small functions before generating code (see
+	 * {@link Inliner})
+	 * @param n largest function to inline, in AST nodes; 0 inlines nothing
+	 * @throws IllegalArgumentException if n is negative
+	 */
+	public void setInline(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("inline size " + n);
+		}
+		inline = n;
+	}
+
+	/**
+	 * Limit how much inlining may grow a function's frame (see
+	 * {@link Inliner})
+	 * @param n most bytes of locals inlining may add to one function
+	 * @throws IllegalArgumentException if n is negative
+	 */
+	public void setInlineFrame(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("inline frame size " + n);
+		}
+		inlineFrame = n;
+	}
+
+	/**
+	 * Move loop-invariant expressions out of loops before generating code
+	 * (see {@link LoopHoister})
+	 * @param value true to hoist loop invariants
+	 */
+	public void setLicm(boolean value) {
+		licm = value;
+	}
+
+	/**
+	 * Eliminate common subexpressions in straight-line code before
+	 * generating code (see {@link ValueNumbering})
+	 * @param value true to eliminate common subexpressions
+	 */
+	public void setCse(boolean value) {
+		cse = value;
+	}
+
+	/**
+	 * Unroll repeat loops with a literal count (see
+	 * {@link RepeatStmtNode#codeGen})
+	 * @param n copies of the body per iteration; 1 does not unroll
+	 * @throws IllegalArgumentException if n is less than 1
+	 */
+	public void setUnroll(int n) {
+		if (n < 1) {
+			throw new IllegalArgumentException("unroll factor " + n);
+		}
+		unroll = n;
+	}
+
+	/**
+	 * Statistics for the most recent call to {@link process}, or null if
+	 * it has not been called
+	 */
+	public CompileStats getStats() {
+		return stats;
+	}
+
 	/**
 	 * Perform cleanup at the end of parsing. This should be called
 	 * after both good and bad input so that the files are all in a
@@ -128,58 +424,146 @@ public class P6 {
 	 * (i.e., of the nonterminal "program")
 	 * @return root of the CFG
 	 */
-	private Symbol parseCFG() {
+	private Symbol parseCFG(CompilationContext ctx) {
 		try {
-			parser P = new parser(new Yylex(inFile));
-			return P.parse();
+			java_cup.runtime.Scanner scanner = source != null
+				? new Yylex(source, ctx) : new Yylex(inFile, ctx);
+			if (stats.isTiming()) {
+				// scan everything up front so that scanning and parsing
+				// are timed as separate phases
+				stats.begin(CompileStats.SCAN);
+				TokenBuffer tokens = TokenBuffer.scanAll(scanner);
+				stats.end(CompileStats.SCAN);
+				stats.tokens = tokens.size();
+				scanner = tokens;
+			}
+
+			stats.begin(CompileStats.PARSE);
+			try {
+				parser P = new parser(scanner);
+				return P.parse();
+			} finally {
+				stats.end(CompileStats.PARSE);
+			}
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
+	/**
+	 * Runs one compilation in a fresh {@link CompilationContext} that is
+	 * installed for the calling thread until the compilation finishes.
+	 * @return one of the RESULT_* codes
+	 */
 	public int process() {
-		Symbol cfgRoot = parseCFG();
+		CompilationContext ctx = new CompilationContext(outFile, diagnostics);
+		stats = ctx.stats = new CompileStats(timing);
+		ctx.parallel = parallel;
+		ctx.registers = registers;
+		ctx.peephole = peephole;
+		ctx.ir = ir;
+		ctx.unroll = unroll;
+		CompilationContext prev = CompilationContext.enter(ctx);
+		try {
+			return process(ctx);
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
 
-		ProgramNode astRoot = (ProgramNode)cfgRoot.value;
-		if (ErrMsg.getErr()) {
+	private int process(CompilationContext ctx) {
+		Symbol cfgRoot = parseCFG(ctx);
+		if (cfgRoot == null || ErrMsg.getErr()) {
 			return P6.RESULT_SYNTAX_ERROR;
 		}
+		ProgramNode astRoot = (ProgramNode)cfgRoot.value;
 
+		stats.begin(CompileStats.NAME_ANALYSIS);
 		astRoot.nameAnalysis();	 // perform name analysis
+		stats.end(CompileStats.NAME_ANALYSIS);
 		if (ErrMsg.getErr()) {
 			return P6.RESULT_NAME_ANALYSIS_ERROR;
 		}
 
+		stats.begin(CompileStats.TYPE_CHECK);
 		astRoot.typeCheck();
+		stats.end(CompileStats.TYPE_CHECK);
 		if (ErrMsg.getErr()) {
 			return P6.RESULT_TYPE_ERROR;
 		}
 
-		//////////////////////////
-		// TODO: Calling codeGen   //
-		//////////////////////////
-		Codegen.p = outFile;
+		if (inline > 0 || fold || licm || cse || dce) {
+			stats.begin(CompileStats.OPTIMIZE);
+			if (inline > 0) {
+				astRoot.inline(inline, inlineFrame);
+			}
+			if (fold) {
+				astRoot.fold();
+			}
+			if (licm) {
+				astRoot.hoist();
+			}
+			if (cse) {
+				astRoot.eliminateCommonSubexps();
+			}
+			if (dce) {
+				astRoot.eliminateDeadCode();
+			}
+			stats.end(CompileStats.OPTIMIZE);
+		}
+
+		stats.begin(CompileStats.CODE_GEN);
 		astRoot.codeGen();
-		Codegen.p.close();
+		ctx.out.close();
+		stats.end(CompileStats.CODE_GEN);
+		if (ErrMsg.getErr()) {
+			return P6.RESULT_CODEGEN_ERROR;
+		}
+		// the writer never throws, so a full disk only shows up here
+		if (ctx.out.checkError()) {
+			diagnostics.println("error writing " + outName);
+			return P6.RESULT_WRITE_ERROR;
+		}
 		return P6.RESULT_CORRECT;
 	}
 
 	public void run() {
 		int resultCode = process();
+		if (timing) {
+			if (statsJson) {
+				stats.printJson(System.out);
+			} else {
+				stats.print(System.out);
+			}
+		}
 		if (resultCode == RESULT_CORRECT) {
 			cleanup();
 			return;
 		}
 
+		pukeAndDie(resultMessage(resultCode), resultCode);
+	}
+
+	/**
+	 * Message printed on exit when a compilation fails
+	 * @param resultCode one of the RESULT_* error codes
+	 */
+	static String resultMessage(int resultCode) {
 		switch(resultCode) {
 		case RESULT_SYNTAX_ERROR:
-			pukeAndDie("Syntax error", resultCode);
-		case RESULT_TYPE_ERROR:
-			pukeAndDie("Type checking error", resultCode);
+			return "Syntax error";
 		case RESULT_NAME_ANALYSIS_ERROR:
-			pukeAndDie("Name analysis error", resultCode);
+			return "Name analysis error";
+		case RESULT_CODEGEN_ERROR:
+			return "Code generation error";
+		case RESULT_INTERNAL_ERROR:
+			return "Internal compiler error";
+		case RESULT_WRITE_ERROR:
+			return "Output error";
+		case RESULT_OTHER_ERROR:
+			return "Compilation failed";
 		default:
-			pukeAndDie("Type checking error", RESULT_OTHER_ERROR);
+			return "Type checking error";
 		}
 	}
 
@@ -213,7 +597,62 @@ public class P6 {
 		}
 	}
 
+	/**
+	 * Entry point for --batch: compiles every file named by args[1]
+	 * and exits with -1 if any of them failed.
+	 */
+	private static void runBatch(String[] args) {
+		// the options may come before or after the directory or list
+		List<String> options = new ArrayList<String>();
+		String arg = null;
+		for (int k = 1; k < args.length; k++) {
+			if (args[k].startsWith("--")) {
+				options.add(args[k]);
+			} else if (arg == null) {
+				arg = args[k];
+			} else {
+				outStream.println("unexpected argument " + args[k]);
+				System.exit(-1);
+			}
+		}
+		if (arg == null) {
+			outStream.println("please supply a directory of .gibberish "
+				+ "files or a file listing them.");
+			System.exit(-1);
+		}
+
+		// check the options once, rather than in every task
+		String[] opts = options.toArray(new String[options.size()]);
+		new P6().parseOptions(opts, 0);
+		if (options.contains("--stats") || options.contains("--stats=json")) {
+			outStream.println("--stats is not supported with --batch");
+			System.exit(-1);
+		}
+
+		List<File> sources = null;
+		try {
+			sources = BatchCompiler.collectSources(arg);
+		} catch (IOException ex) {
+			outStream.println("Could not open " + arg + " for reading");
+			System.exit(-1);
+		}
+
+		int failed = new BatchCompiler(sources, opts, outStream).run();
+		System.exit(failed == 0 ? 0 : -1);
+	}
+
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("--batch")) {
+			runBatch(args);
+		}
+		if (args.length > 0 && args[0].equals("--server")) {
+			CompileServer.main(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--client")) {
+			CompileClient.main(args);
+			return;
+		}
 		P6 instance = new P6(args);
 		instance.run();
 	}
@@ -0,0 +1,551 @@
+import java.util.*;
+
+/**
+ * Peephole
+ *
+ * Cleans up the assembly of one function before it reaches the output
+ * file (see FnDeclNode.codeGen). Lines are read one at a time onto the
+ * end of an output window; after each one, the rules in {@link #RULES}
+ * whose last pattern is that kind of line (the same opcode, or a label)
+ * are tried, in order, against the last few lines of the window, and the
+ * first one that matches replaces them. Replacement lines are fed back
+ * through the rules, so that, for instance, removing an inner push/pop
+ * pair can expose an outer one.
+ *
+ * A rule is a list of line patterns and a list of replacement lines.
+ * A pattern is either an instruction, written as the opcode followed by
+ * its comma-separated operands, or a label ("name:"). An operand (or label
+ * name) written ?x is a variable: it matches any operand, but every
+ * occurrence of ?x in one match must be the same text. A rule may also
+ * require that the base register of an address variable (the register in
+ * "off(reg)") is not what a register variable matched. Directives (.data,
+ * .asciiz, ...) and instructions whose opcode no rule mentions never
+ * match, so rules never look across them; their operands are not even
+ * split.
+ *
+ * The number of instructions each rule removed is added to the
+ * compilation's {@link CompileStats}.
+ */
+public class Peephole {
+	// the opcodes the rules mention, in order of first use; filled in by
+	// Line.pattern as the rules are built
+	private static final List<String> OPCODES = new ArrayList<String>();
+
+	// the opcode of a label line, for the rule index below
+	private static final int LABEL_OP = -1;
+
+	// registers other than Codegen.TEMPS: splitting a line uses these
+	// strings instead of making new ones, as registers are most of the
+	// operands
+	private static final String[] REGISTERS = {
+		Codegen.SP, Codegen.FP, Codegen.RA, Codegen.V0, Codegen.V1, Codegen.A0
+	};
+
+	// likewise for the addresses and offset of genPush and genPop
+	private static final String[] STACK_TOP = { "0($sp)", "4($sp)", "4" };
+
+	private static final Rule[] RULES = {
+		// genPush(r) directly followed by genPop(r)
+		new Rule("push-pop",
+			new String[] { "sw ?a, 0($sp)", "subu $sp, $sp, 4",
+			               "lw ?a, 4($sp)", "addu $sp, $sp, 4" },
+			new String[] { }),
+		// genPush(a) directly followed by genPop(b)
+		new Rule("push-pop-move",
+			new String[] { "sw ?a, 0($sp)", "subu $sp, $sp, 4",
+			               "lw ?b, 4($sp)", "addu $sp, $sp, 4" },
+			new String[] { "move ?b, ?a" }),
+		// genPop(a) directly followed by genPush(a): a copy of the top
+		new Rule("pop-push",
+			new String[] { "lw ?a, 4($sp)", "addu $sp, $sp, 4",
+			               "sw ?a, 0($sp)", "subu $sp, $sp, 4" },
+			new String[] { "lw ?a, 4($sp)" }),
+		new Rule("sp-round-trip",
+			new String[] { "subu $sp, $sp, 4", "addu $sp, $sp, 4" },
+			new String[] { }),
+		new Rule("sp-round-trip",
+			new String[] { "addu $sp, $sp, 4", "subu $sp, $sp, 4" },
+			new String[] { }),
+		// reloading a value that was just stored
+		new Rule("store-load",
+			new String[] { "sw ?a, ?m", "lw ?a, ?m" },
+			new String[] { "sw ?a, ?m" }, 'm', 'a'),
+		new Rule("store-load",
+			new String[] { "sw ?a, ?m", "lw ?b, ?m" },
+			new String[] { "sw ?a, ?m", "move ?b, ?a" }),
+		// storing a value that was just loaded, unless the load changed
+		// the address
+		new Rule("load-store",
+			new String[] { "lw ?a, ?m", "sw ?a, ?m" },
+			new String[] { "lw ?a, ?m" }, 'm', 'a'),
+		// frames without locals
+		new Rule("zero-adjust",
+			new String[] { "subu ?a, ?a, 0" },
+			new String[] { }),
+		new Rule("self-move",
+			new String[] { "move ?a, ?a" },
+			new String[] { }),
+		// a jump to the very next label
+		new Rule("jump-next",
+			new String[] { "j ?l", "?l:" },
+			new String[] { "?l:" }),
+	};
+
+	/**
+	 * The distinct rule names, in table order.
+	 */
+	static final String[] RULE_NAMES;
+	static {
+		List<String> names = new ArrayList<String>();
+		for (Rule rule : RULES) {
+			if (!names.contains(rule.name)) {
+				names.add(rule.name);
+			}
+		}
+		RULE_NAMES = names.toArray(new String[names.size()]);
+		for (Rule rule : RULES) {
+			rule.index = names.indexOf(rule.name);
+		}
+	}
+
+	// longest pattern of any rule
+	private static final int WINDOW;
+	static {
+		int n = 0;
+		for (Rule rule : RULES) {
+			n = Math.max(n, rule.pattern.length);
+		}
+		WINDOW = n;
+	}
+
+	// the rules to try after a line, at its opcode + 1 (see Line.op):
+	// those whose last pattern is that kind of line, in table order
+	private static final Rule[][] BY_LAST;
+	static {
+		BY_LAST = new Rule[OPCODES.size() + 1][];
+		for (int op = LABEL_OP; op < OPCODES.size(); op++) {
+			List<Rule> rules = new ArrayList<Rule>();
+			for (Rule rule : RULES) {
+				if (rule.pattern[rule.pattern.length - 1].op == op) {
+					rules.add(rule);
+				}
+			}
+			BY_LAST[op + 1] = rules.toArray(new Rule[rules.size()]);
+		}
+	}
+
+	// the window is written out in chunks of this many lines, keeping the
+	// last WINDOW; a rule could only reach further back through a long
+	// chain of rewrites, and then merely misses a chance
+	private static final int FLUSH_AT = 256;
+
+	// must match Codegen's pretty printing
+	private static final int MAXLEN = 4;
+
+	private final AsmWriter out;
+	private final CompileStats stats;
+	private final List<Line> window = new ArrayList<Line>();
+	private final String[] bindings = new String[26];
+
+	private Peephole(AsmWriter out, CompileStats stats) {
+		this.out = out;
+		this.stats = stats;
+	}
+
+	/**
+	 * Optimizes the assembly in code and appends the result to out.
+	 */
+	public static void optimize(CharSequence code, AsmWriter out,
+	                            CompileStats stats) {
+		Peephole p = new Peephole(out, stats);
+		String text = code.toString();
+		int start = 0;
+		int end;
+		while ((end = text.indexOf('\n', start)) >= 0) {
+			p.add(Line.parse(text, start, end));
+			start = end + 1;
+		}
+		if (start < text.length()) {
+			p.add(Line.parse(text, start, text.length()));
+		}
+		p.flush(p.window.size());
+	}
+
+	/**
+	 * Appends line to the window, then rewrites the end of the window for
+	 * as long as some rule matches there.
+	 */
+	private void add(Line line) {
+		window.add(line);
+		if (line.kind != Line.OTHER) {
+			for (Rule rule : BY_LAST[line.op + 1]) {
+				if (matches(rule)) {
+					apply(rule);
+					return;
+				}
+			}
+		}
+		if (window.size() >= FLUSH_AT + WINDOW) {
+			flush(FLUSH_AT);
+		}
+	}
+
+	private boolean matches(Rule rule) {
+		int n = rule.pattern.length;
+		int base = window.size() - n;
+		if (base < 0) {
+			return false;
+		}
+		Arrays.fill(bindings, null);
+		// opcodes first, which is cheap, then operands
+		for (int i = n - 1; i >= 0; i--) {
+			Line line = window.get(base + i);
+			if (line.kind == Line.OTHER || line.op != rule.pattern[i].op) {
+				return false;
+			}
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			if (!match(rule.pattern[i], window.get(base + i))) {
+				return false;
+			}
+		}
+		return rule.addr < 0
+			|| !isBase(bindings[rule.reg], bindings[rule.addr]);
+	}
+
+	private boolean match(Line pattern, Line line) {
+		if (line.kind == Line.LABEL) {
+			return bind(pattern.label, line.label);
+		}
+		String[] args = line.args();
+		if (pattern.args.length != args.length) {
+			return false;
+		}
+		for (int i = 0; i < args.length; i++) {
+			if (!bind(pattern.args[i], args[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// is reg the base register of the address addr ("off(reg)")?
+	private static boolean isBase(String reg, String addr) {
+		int open = addr.indexOf('(');
+		return open >= 0 && addr.length() == open + reg.length() + 2
+			&& addr.regionMatches(open + 1, reg, 0, reg.length());
+	}
+
+	// literal operands must be equal; a variable must agree with what it
+	// is already bound to
+	private boolean bind(String pattern, String text) {
+		if (pattern.charAt(0) != '?') {
+			return pattern.equals(text);
+		}
+		int v = pattern.charAt(1) - 'a';
+		if (bindings[v] == null) {
+			bindings[v] = text;
+			return true;
+		}
+		return bindings[v].equals(text);
+	}
+
+	private void apply(Rule rule) {
+		int removed = 0;
+		int base = window.size() - rule.pattern.length;
+		while (window.size() > base) {
+			if (window.remove(window.size() - 1).kind == Line.INSN) {
+				removed++;
+			}
+		}
+		Line[] replacement = new Line[rule.replacement.length];
+		for (int i = 0; i < replacement.length; i++) {
+			replacement[i] = rule.replacement[i].instantiate(bindings);
+			if (replacement[i].kind == Line.INSN) {
+				removed--;
+			}
+		}
+		stats.instructions -= removed;
+		stats.peepholeRemoved(rule.index, removed);
+		for (Line line : replacement) {
+			add(line);
+		}
+	}
+
+	/**
+	 * Writes the first n lines of the window.
+	 */
+	private void flush(int n) {
+		for (int i = 0; i < n; i++) {
+			window.get(i).write(out);
+		}
+		window.subList(0, n).clear();
+	}
+
+	private static class Rule {
+		final String name;
+		final Line[] pattern;
+		final Line[] replacement;
+		int index;
+
+		// the variables (as 0 for ?a, ...) of an address and a register
+		// that must not be its base, or -1
+		final int addr;
+		final int reg;
+
+		Rule(String name, String[] pattern, String[] replacement) {
+			this(name, pattern, replacement, -1, -1);
+		}
+
+		Rule(String name, String[] pattern, String[] replacement,
+		     char addr, char reg) {
+			this(name, pattern, replacement, addr - 'a', reg - 'a');
+		}
+
+		private Rule(String name, String[] pattern, String[] replacement,
+		             int addr, int reg) {
+			this.name = name;
+			this.addr = addr;
+			this.reg = reg;
+			this.pattern = new Line[pattern.length];
+			for (int i = 0; i < pattern.length; i++) {
+				this.pattern[i] = Line.pattern(pattern[i]);
+			}
+			this.replacement = new Line[replacement.length];
+			for (int i = 0; i < replacement.length; i++) {
+				this.replacement[i] = Line.pattern(replacement[i]);
+			}
+		}
+	}
+
+	/**
+	 * One line of assembly. Lines read from the code generator keep their
+	 * original text (and comments); lines made by a rule are formatted the
+	 * way Codegen.generate would.
+	 */
+	private static class Line {
+		static final int INSN = 0;
+		static final int LABEL = 1;
+		static final int OTHER = 2;	// directives, blank lines, and
+						// instructions no rule mentions
+
+		final int kind;
+		final String label;
+
+		// the opcode, as an index into OPCODES (LABEL_OP for a label, and
+		// meaningless for OTHER)
+		final int op;
+
+		// the operands; for a line that was read, split on first use
+		private String[] args;
+
+		// where the original text is, if the line was read rather than
+		// made by a rule, and where its operands are in it
+		final String src;
+		final int start;
+		final int end;
+		private final int argStart;
+		private final int argEnd;
+
+		private static final String[] NO_ARGS = new String[0];
+
+		Line(int kind, String label, int op, String[] args) {
+			this(kind, label, op, args, null, 0, 0, 0, 0);
+		}
+
+		Line(int kind, String src, int start, int end) {
+			this(kind, null, -1, null, src, start, end, 0, 0);
+		}
+
+		private Line(int kind, String label, int op, String[] args,
+		             String src, int start, int end, int argStart,
+		             int argEnd) {
+			this.kind = kind;
+			this.label = label;
+			this.op = op;
+			this.args = args;
+			this.src = src;
+			this.start = start;
+			this.end = end;
+			this.argStart = argStart;
+			this.argEnd = argEnd;
+		}
+
+		String[] args() {
+			if (args == null) {
+				args = split(src, argStart, argEnd);
+			}
+			return args;
+		}
+
+		/**
+		 * Splits the line src[start, end) in the format Codegen writes:
+		 * "\topcode  a, b, c", possibly followed by a "#" comment, or
+		 * "label:", possibly followed by a comment.
+		 */
+		static Line parse(String src, int start, int end) {
+			if (start == end) {
+				return new Line(OTHER, src, start, end);
+			}
+			if (src.charAt(start) != '\t') {
+				int colon = find(src, ':', start, end);
+				if (colon > start && colon < end
+				    && isComment(src, colon + 1, end)) {
+					return new Line(LABEL, src.substring(start, colon),
+					                LABEL_OP, null, src, start, end, 0, 0);
+				}
+				return new Line(OTHER, src, start, end);
+			}
+			int k = start + 1;
+			while (k < end && src.charAt(k) > ' ') {
+				k++;
+			}
+			int op = OPCODES.size() - 1;
+			while (op >= 0 && !(OPCODES.get(op).length() == k - start - 1
+			                    && src.startsWith(OPCODES.get(op), start + 1))) {
+				op--;
+			}
+			if (op < 0) {
+				return new Line(OTHER, src, start, end);
+			}
+			return new Line(INSN, null, op, null, src, start, end, k,
+			                find(src, '#', k, end));
+		}
+
+		/**
+		 * Parses a rule's pattern; variables are kept as "?x".
+		 */
+		static Line pattern(String text) {
+			if (text.endsWith(":")) {
+				return new Line(LABEL, text.substring(0, text.length() - 1),
+				                LABEL_OP, null);
+			}
+			int space = text.indexOf(' ');
+			if (space < 0) {
+				return new Line(INSN, null, opcode(text), NO_ARGS);
+			}
+			return new Line(INSN, null, opcode(text.substring(0, space)),
+			                split(text, space + 1, text.length()));
+		}
+
+		// the index of opcode in OPCODES, adding it if it is new
+		private static int opcode(String opcode) {
+			int op = OPCODES.indexOf(opcode);
+			if (op < 0) {
+				op = OPCODES.size();
+				OPCODES.add(opcode);
+			}
+			return op;
+		}
+
+		// the first c in src[from, end), or end; src holds the whole
+		// function, so an unbounded indexOf would run past the line
+		private static int find(String src, char c, int from, int end) {
+			while (from < end && src.charAt(from) != c) {
+				from++;
+			}
+			return from;
+		}
+
+		private static boolean isComment(String src, int k, int end) {
+			while (k < end && src.charAt(k) <= ' ') {
+				k++;
+			}
+			return k == end || src.charAt(k) == '#';
+		}
+
+		/**
+		 * The comma-separated operands in src[start, end), trimmed.
+		 */
+		private static String[] split(String src, int start, int end) {
+			while (start < end && src.charAt(start) <= ' ') {
+				start++;
+			}
+			if (start == end) {
+				return NO_ARGS;
+			}
+			int n = 1;
+			for (int k = start; k < end; k++) {
+				if (src.charAt(k) == ',') {
+					n++;
+				}
+			}
+			String[] args = new String[n];
+			for (int i = 0; i < n; i++) {
+				int stop = find(src, ',', start, end);
+				int from = start;
+				while (from < stop && src.charAt(from) <= ' ') {
+					from++;
+				}
+				int to = stop;
+				while (to > from && src.charAt(to - 1) <= ' ') {
+					to--;
+				}
+				args[i] = operand(src, from, to);
+				start = stop + 1;
+			}
+			return args;
+		}
+
+		// src[from, to), as one of the strings above if it is one
+		private static String operand(String src, int from, int to) {
+			if (to - from == 3 && src.charAt(from) == '$') {
+				char c = src.charAt(from + 1);
+				char d = src.charAt(from + 2);
+				if (c == 't' && d >= '0' && d <= '9') {
+					return Codegen.TEMPS[d - '0'];
+				}
+				for (String reg : REGISTERS) {
+					if (reg.charAt(1) == c && reg.charAt(2) == d) {
+						return reg;
+					}
+				}
+			}
+			for (String addr : STACK_TOP) {
+				if (addr.length() == to - from
+				    && src.startsWith(addr, from)) {
+					return addr;
+				}
+			}
+			return src.substring(from, to);
+		}
+
+		/**
+		 * This replacement pattern with its variables filled in.
+		 */
+		Line instantiate(String[] bindings) {
+			if (kind == LABEL) {
+				return new Line(LABEL, subst(label, bindings), LABEL_OP, null);
+			}
+			String[] filled = new String[args.length];
+			for (int i = 0; i < args.length; i++) {
+				filled[i] = subst(args[i], bindings);
+			}
+			return new Line(INSN, null, op, filled);
+		}
+
+		private static String subst(String s, String[] bindings) {
+			return s.charAt(0) == '?' ? bindings[s.charAt(1) - 'a'] : s;
+		}
+
+		void write(AsmWriter p) {
+			if (src != null) {
+				p.append(src, start, end).newline();
+			} else if (kind == LABEL) {
+				p.append(label).append(':').newline();
+			} else {
+				String opcode = OPCODES.get(op);
+				p.append('\t').append(opcode);
+				for (int i = 0; i < args.length; i++) {
+					if (i == 0) {
+						p.pad(MAXLEN - opcode.length() + 2);
+					} else {
+						p.append(", ");
+					}
+					p.append(args[i]);
+				}
+				p.newline();
+			}
+		}
+	}
+}
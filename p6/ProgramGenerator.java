@@ -0,0 +1,558 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * ProgramGenerator
+ *
+ * Writes a random Gibberish program of configurable shape, for driving the
+ * compiler and its benchmarks at scale. Every program it writes passes
+ * name analysis and type checking. Its behavior is deterministic (every
+ * local is assigned before anything reads it) and it terminates: functions
+ * only call functions declared before them, every while loop is bounded by
+ * a counter that nothing else assigns, repeat counts are small literals and
+ * every divisor is a non-zero literal.
+ *
+ * Usage:  java ProgramGenerator [options] <outfile>
+ * options (defaults in parentheses):
+ *    --globals=N        int globals and bool globals, N of each (4)
+ *    --structs=N        struct types, each with one global variable (0);
+ *                       the code generator does not handle field access,
+ *                       so such programs only get through type checking
+ *    --fields=N         int and bool fields per struct, N of each (2)
+ *    --struct-depth=N   longest chain of nested struct fields (2)
+ *    --functions=N      functions besides main (10)
+ *    --stmts=N          statements per function body (10)
+ *    --expr-depth=N     maximum expression depth (3)
+ *    --nesting=N        maximum nesting of if/while/repeat (2)
+ *    --strings=N        distinct string literals (10)
+ *    --bytes=N          add functions until the program is at least N
+ *                       bytes long; overrides --functions
+ *    --seed=N           random seed (1)
+ */
+public class ProgramGenerator {
+	// types of variables, fields, parameters and return values
+	private static final int INT = 0;
+	private static final int BOOL = 1;
+	private static final int VOID = 2;
+	private static final String[] TYPE_NAMES = { "int", "bool", "void" };
+
+	// knobs
+	int globals = 4;
+	int structs = 0;
+	int fields = 2;
+	int structDepth = 2;
+	int functions = 10;
+	int stmts = 10;
+	int exprDepth = 3;
+	int nesting = 2;
+	int strings = 10;
+	long bytes = 0;
+	long seed = 1;
+
+	private Random rand;
+	private Writer out;
+	private long written;
+
+	// int-typed and bool-typed struct field paths, per struct type
+	private List<List<String>> intFields = new ArrayList<List<String>>();
+	private List<List<String>> boolFields = new ArrayList<List<String>>();
+
+	// functions declared so far
+	private List<Fn> fns = new ArrayList<Fn>();
+
+	// variables visible in the function being generated; "assignable"
+	// ones exclude the while-loop counters
+	private List<String> intVars = new ArrayList<String>();
+	private List<String> boolVars = new ArrayList<String>();
+	private List<String> intAssignable = new ArrayList<String>();
+	private List<String> boolAssignable = new ArrayList<String>();
+
+	private static class Fn {
+		String name;
+		int returnType;
+		int[] params;
+
+		Fn(String name, int returnType, int[] params) {
+			this.name = name;
+			this.returnType = returnType;
+			this.params = params;
+		}
+	}
+
+	/**
+	 * Writes a whole program to w.
+	 */
+	public void generate(Writer w) throws IOException {
+		rand = new Random(seed);
+		out = w;
+		written = 0;
+
+		writeGlobals();
+		writeStructs();
+
+		int k = 0;
+		while (bytes > 0 ? written < bytes : k < functions) {
+			int ret = rand.nextInt(3);
+			int[] params = new int[rand.nextInt(4)];
+			for (int i = 0; i < params.length; i++) {
+				params[i] = rand.nextInt(2);
+			}
+			Fn fn = new Fn("f" + k, ret, params);
+			writeFunction(fn);
+			fns.add(fn);
+			k++;
+		}
+		writeFunction(new Fn("main", VOID, new int[0]));
+		out.flush();
+	}
+
+	private void emit(CharSequence s) throws IOException {
+		out.append(s);
+		written += s.length();
+	}
+
+	// **********************************************************************
+	// declarations
+	// **********************************************************************
+
+	private void writeGlobals() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < globals; k++) {
+			sb.append("int gi").append(k).append(";\n");
+			sb.append("bool gb").append(k).append(";\n");
+		}
+		sb.append('\n');
+		emit(sb);
+	}
+
+	/**
+	 * Struct S<k> has int fields f<k>_<j>, bool fields b<k>_<j> and, unless
+	 * it starts a new chain, a field n of type S<k-1>.
+	 */
+	private void writeStructs() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < structs; k++) {
+			boolean nested = k > 0 && k % Math.max(structDepth, 1) != 0;
+			List<String> ints = new ArrayList<String>();
+			List<String> bools = new ArrayList<String>();
+
+			sb.append("struct S").append(k).append(" {\n");
+			for (int j = 0; j < fields; j++) {
+				sb.append("    int f").append(k).append('_').append(j)
+				  .append(";\n");
+				sb.append("    bool b").append(k).append('_').append(j)
+				  .append(";\n");
+				ints.add(".f" + k + "_" + j);
+				bools.add(".b" + k + "_" + j);
+			}
+			if (nested) {
+				sb.append("    struct S").append(k - 1).append(" n;\n");
+				for (String path : intFields.get(k - 1)) {
+					ints.add(".n" + path);
+				}
+				for (String path : boolFields.get(k - 1)) {
+					bools.add(".n" + path);
+				}
+			}
+			if (fields == 0 && !nested) {
+				// a struct needs at least one field
+				sb.append("    int f").append(k).append("_0;\n");
+				ints.add(".f" + k + "_0");
+			}
+			sb.append("};\n");
+			sb.append("struct S").append(k).append(" gs").append(k)
+			  .append(";\n\n");
+			intFields.add(ints);
+			boolFields.add(bools);
+		}
+		emit(sb);
+	}
+
+	private void writeFunction(Fn fn) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		intVars.clear();
+		boolVars.clear();
+		intAssignable.clear();
+		boolAssignable.clear();
+
+		for (int k = 0; k < globals; k++) {
+			addVar(INT, "gi" + k, true);
+			addVar(BOOL, "gb" + k, true);
+		}
+		for (int k = 0; k < structs; k++) {
+			for (String path : intFields.get(k)) {
+				addVar(INT, "gs" + k + path, true);
+			}
+			for (String path : boolFields.get(k)) {
+				addVar(BOOL, "gs" + k + path, true);
+			}
+		}
+
+		sb.append(TYPE_NAMES[fn.returnType]).append(' ').append(fn.name)
+		  .append('(');
+		for (int i = 0; i < fn.params.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(TYPE_NAMES[fn.params[i]]).append(" p").append(i);
+			addVar(fn.params[i], "p" + i, true);
+		}
+		sb.append(") {\n");
+
+		for (int i = 0; i < 2; i++) {
+			sb.append("    int li").append(i).append(";\n");
+			sb.append("    bool lb").append(i).append(";\n");
+			addVar(INT, "li" + i, true);
+			addVar(BOOL, "lb" + i, true);
+		}
+		for (int d = 0; d < nesting; d++) {
+			sb.append("    int w").append(d).append(";\n");
+			addVar(INT, "w" + d, false);
+		}
+
+		// locals start out as whatever is on the stack, so give them a value
+		for (int i = 0; i < 2; i++) {
+			indent(sb, 0);
+			sb.append("li").append(i).append(" = ").append(rand.nextInt(100))
+			  .append(";\n");
+			indent(sb, 0);
+			sb.append("lb").append(i).append(" = ")
+			  .append(rand.nextBoolean()).append(";\n");
+		}
+		for (int d = 0; d < nesting; d++) {
+			indent(sb, 0);
+			sb.append("w").append(d).append(" = 0;\n");
+		}
+		for (int i = 0; i < stmts; i++) {
+			stmt(sb, 0);
+		}
+		if (fn.returnType != VOID) {
+			indent(sb, 0);
+			sb.append("return ");
+			exp(sb, fn.returnType, exprDepth);
+			sb.append(";\n");
+		}
+		sb.append("}\n\n");
+		emit(sb);
+	}
+
+	private void addVar(int type, String name, boolean assignable) {
+		(type == INT ? intVars : boolVars).add(name);
+		if (assignable) {
+			(type == INT ? intAssignable : boolAssignable).add(name);
+		}
+	}
+
+	// **********************************************************************
+	// statements
+	// **********************************************************************
+
+	/**
+	 * Appends one statement (two for a while loop, which first resets its
+	 * counter) at nesting depth d.
+	 */
+	private void stmt(StringBuilder sb, int d) {
+		int kinds = d < nesting ? 11 : 7;
+		int kind = rand.nextInt(kinds);
+		int type = rand.nextInt(2);
+
+		indent(sb, d);
+		switch (kind) {
+		case 0:
+		case 1:
+			sb.append(pick(type == INT ? intAssignable : boolAssignable))
+			  .append(" = ");
+			exp(sb, type, exprDepth);
+			sb.append(";\n");
+			break;
+		case 2:
+			sb.append(pick(intAssignable))
+			  .append(rand.nextBoolean() ? "++;\n" : "--;\n");
+			break;
+		case 3:
+			sb.append("cin >> ")
+			  .append(pick(type == INT ? intAssignable : boolAssignable))
+			  .append(";\n");
+			break;
+		case 4:
+			sb.append("cout << ");
+			if (strings > 0 && rand.nextBoolean()) {
+				sb.append("\"str").append(rand.nextInt(strings)).append('"');
+			} else {
+				exp(sb, type, exprDepth);
+			}
+			sb.append(";\n");
+			break;
+		case 5:
+		case 6:
+			if (fns.isEmpty()) {
+				sb.append(pick(intAssignable)).append("++;\n");
+			} else {
+				call(sb, fns.get(rand.nextInt(fns.size())), exprDepth);
+				sb.append(";\n");
+			}
+			break;
+		case 7:
+			sb.append("if (");
+			exp(sb, BOOL, exprDepth);
+			sb.append(") {\n");
+			block(sb, d + 1);
+			indent(sb, d);
+			sb.append("}\n");
+			break;
+		case 8:
+			sb.append("if (");
+			exp(sb, BOOL, exprDepth);
+			sb.append(") {\n");
+			block(sb, d + 1);
+			indent(sb, d);
+			sb.append("}\n");
+			indent(sb, d);
+			sb.append("else {\n");
+			block(sb, d + 1);
+			indent(sb, d);
+			sb.append("}\n");
+			break;
+		case 9:
+			sb.append("w").append(d).append(" = 0;\n");
+			indent(sb, d);
+			sb.append("while (w").append(d).append(" < ")
+			  .append(1 + rand.nextInt(4)).append(" && ");
+			exp(sb, BOOL, exprDepth);
+			sb.append(") {\n");
+			block(sb, d + 1);
+			indent(sb, d + 1);
+			sb.append("w").append(d).append("++;\n");
+			indent(sb, d);
+			sb.append("}\n");
+			break;
+		default:
+			sb.append("repeat (").append(1 + rand.nextInt(4)).append(") {\n");
+			block(sb, d + 1);
+			indent(sb, d);
+			sb.append("}\n");
+			break;
+		}
+	}
+
+	private void block(StringBuilder sb, int d) {
+		int n = 1 + rand.nextInt(Math.max(stmts / 3, 1));
+		for (int i = 0; i < n; i++) {
+			stmt(sb, d);
+		}
+	}
+
+	private static void indent(StringBuilder sb, int d) {
+		for (int k = 0; k <= d; k++) {
+			sb.append("    ");
+		}
+	}
+
+	// **********************************************************************
+	// expressions
+	// **********************************************************************
+
+	/**
+	 * Appends an expression of the given type (INT or BOOL) at most depth
+	 * operators deep.
+	 */
+	private void exp(StringBuilder sb, int type, int depth) {
+		if (depth <= 0 || rand.nextInt(4) == 0) {
+			leaf(sb, type);
+			return;
+		}
+
+		if (type == INT) {
+			switch (rand.nextInt(7)) {
+			case 0:
+				sb.append("(-(");
+				exp(sb, INT, depth - 1);
+				sb.append("))");
+				return;
+			case 1:
+				// division by a non-zero literal only
+				sb.append('(');
+				exp(sb, INT, depth - 1);
+				sb.append(" / ").append(1 + rand.nextInt(9)).append(')');
+				return;
+			case 2:
+				Fn fn = pickFn(INT);
+				if (fn != null) {
+					call(sb, fn, depth - 1);
+					return;
+				}
+				// fall through: no int function yet
+			default:
+				String[] ops = { " + ", " - ", " * " };
+				sb.append('(');
+				exp(sb, INT, depth - 1);
+				sb.append(ops[rand.nextInt(ops.length)]);
+				exp(sb, INT, depth - 1);
+				sb.append(')');
+				return;
+			}
+		}
+
+		switch (rand.nextInt(6)) {
+		case 0:
+			sb.append("!(");
+			exp(sb, BOOL, depth - 1);
+			sb.append(')');
+			return;
+		case 1:
+		case 2:
+			sb.append('(');
+			exp(sb, BOOL, depth - 1);
+			sb.append(rand.nextBoolean() ? " && " : " || ");
+			exp(sb, BOOL, depth - 1);
+			sb.append(')');
+			return;
+		case 3:
+			Fn fn = pickFn(BOOL);
+			if (fn != null) {
+				call(sb, fn, depth - 1);
+				return;
+			}
+			// fall through: no bool function yet
+		default:
+			String[] ops = { " < ", " > ", " <= ", " >= ", " == ", " != " };
+			int operandType = INT;
+			String op = ops[rand.nextInt(ops.length)];
+			if (op.equals(" == ") || op.equals(" != ")) {
+				operandType = rand.nextInt(2);
+			}
+			sb.append('(');
+			exp(sb, operandType, depth - 1);
+			sb.append(op);
+			exp(sb, operandType, depth - 1);
+			sb.append(')');
+			return;
+		}
+	}
+
+	private void leaf(StringBuilder sb, int type) {
+		if (rand.nextInt(3) == 0) {
+			if (type == INT) {
+				sb.append(rand.nextInt(100));
+			} else {
+				sb.append(rand.nextBoolean() ? "true" : "false");
+			}
+		} else {
+			sb.append(pick(type == INT ? intVars : boolVars));
+		}
+	}
+
+	private void call(StringBuilder sb, Fn fn, int depth) {
+		sb.append(fn.name).append('(');
+		for (int i = 0; i < fn.params.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			exp(sb, fn.params[i], Math.max(depth, 0));
+		}
+		sb.append(')');
+	}
+
+	/**
+	 * A random already-declared function returning type, or null if there
+	 * is none (after a few tries).
+	 */
+	private Fn pickFn(int type) {
+		if (fns.isEmpty()) {
+			return null;
+		}
+		for (int tries = 0; tries < 4; tries++) {
+			Fn fn = fns.get(rand.nextInt(fns.size()));
+			if (fn.returnType == type) {
+				return fn;
+			}
+		}
+		return null;
+	}
+
+	private String pick(List<String> names) {
+		return names.get(rand.nextInt(names.size()));
+	}
+
+	// **********************************************************************
+	// command line
+	// **********************************************************************
+
+	public static void main(String[] args) {
+		ProgramGenerator gen = new ProgramGenerator();
+		String outfile = null;
+
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				outfile = arg;
+				continue;
+			}
+			int eq = arg.indexOf('=');
+			if (eq < 0) {
+				usage("missing value in " + arg);
+			}
+			String name = arg.substring(2, eq);
+			long value = 0;
+			try {
+				value = Long.parseLong(arg.substring(eq + 1));
+			} catch (NumberFormatException ex) {
+				usage("bad number in " + arg);
+			}
+			if (value < 0) {
+				usage("negative value in " + arg);
+			}
+			int n = (int) Math.min(value, Integer.MAX_VALUE);
+
+			if (name.equals("globals")) {
+				gen.globals = Math.max(n, 1);
+			} else if (name.equals("structs")) {
+				gen.structs = n;
+			} else if (name.equals("fields")) {
+				gen.fields = n;
+			} else if (name.equals("struct-depth")) {
+				gen.structDepth = n;
+			} else if (name.equals("functions")) {
+				gen.functions = n;
+			} else if (name.equals("stmts")) {
+				gen.stmts = n;
+			} else if (name.equals("expr-depth")) {
+				gen.exprDepth = n;
+			} else if (name.equals("nesting")) {
+				gen.nesting = n;
+			} else if (name.equals("strings")) {
+				gen.strings = n;
+			} else if (name.equals("bytes")) {
+				gen.bytes = value;
+			} else if (name.equals("seed")) {
+				gen.seed = value;
+			} else {
+				usage("unknown option " + arg);
+			}
+		}
+		if (outfile == null) {
+			usage("please supply name of the output file.");
+		}
+
+		try {
+			Writer w = new BufferedWriter(new FileWriter(outfile), 1 << 16);
+			try {
+				gen.generate(w);
+			} finally {
+				w.close();
+			}
+		} catch (IOException ex) {
+			System.err.println("Could not write " + outfile + ": "
+				+ ex.getMessage());
+			System.exit(-1);
+		}
+	}
+
+	private static void usage(String msg) {
+		System.err.println(msg);
+		System.err.println("usage: java ProgramGenerator [--globals=N] "
+			+ "[--structs=N] [--fields=N] [--struct-depth=N] [--functions=N] "
+			+ "[--stmts=N] [--expr-depth=N] [--nesting=N] [--strings=N] "
+			+ "[--bytes=N] [--seed=N] <outfile>");
+		System.exit(-1);
+	}
+}
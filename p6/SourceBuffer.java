@@ -0,0 +1,66 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * SourceBuffer
+ *
+ * The whole text of a source file, decoded once into a char array that the
+ * scanner uses as its own buffer (see the Yylex(SourceBuffer, ...)
+ * constructor in Gibberish.jlex), so scanning never goes back to a Reader
+ * to refill.
+ *
+ * The file is memory-mapped and decoded straight out of the mapping. The
+ * array always has at least one slot past the end of the text: the
+ * scanner's refill logic would otherwise grow the buffer when it reaches
+ * end of file.
+ */
+public class SourceBuffer {
+	final char[] chars;
+	final int length;
+
+	private SourceBuffer(char[] chars, int length) {
+		this.chars = chars;
+		this.length = length;
+	}
+
+	/**
+	 * Maps and decodes filename, replacing malformed input the way
+	 * FileReader does.
+	 * @throws IOException if the file cannot be opened, or is too large to
+	 *         hold in one array
+	 */
+	public static SourceBuffer map(String filename) throws IOException {
+		FileInputStream in = new FileInputStream(filename);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size >= Integer.MAX_VALUE - 8) {
+				throw new IOException(filename + " is too large");
+			}
+			MappedByteBuffer bytes =
+				channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			// a char never takes less than a byte
+			CharBuffer chars = CharBuffer.allocate((int) size + 1);
+			CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			decoder.decode(bytes, chars, true);
+			decoder.flush(chars);
+			return new SourceBuffer(chars.array(), chars.position());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Wraps text that is already in memory.
+	 */
+	public static SourceBuffer of(String text) {
+		char[] chars = new char[text.length() + 1];
+		text.getChars(0, text.length(), chars, 0);
+		return new SourceBuffer(chars, text.length());
+	}
+}
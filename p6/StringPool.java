@@ -0,0 +1,70 @@
+import java.util.*;
+
+/**
+ * StringPool
+ *
+ * The string literals of one compilation. Each distinct literal gets one
+ * label (.S0, .S1, ... in the order literals are first interned), every
+ * occurrence loads the address of that label, and {@link #codeGen} writes
+ * the ones that code was generated for as a single .data section at the
+ * end of the output.
+ *
+ * Literals are interned by name analysis, which sees them in source order
+ * before code generation starts, so the labels do not depend on the order
+ * in which (possibly parallel) code generation reaches them. A literal that
+ * was not interned beforehand gets the next label when first asked for.
+ */
+public class StringPool {
+	private static final String PREFIX = ".S";
+
+	// literal (quotes and escapes included) -> label number
+	private final Map<String, Integer> index = new HashMap<String, Integer>();
+	private final List<String> literals = new ArrayList<String>();
+
+	// the literals label() was asked for, by label number
+	private final BitSet used = new BitSet();
+
+	/**
+	 * Gives literal a label number, if it does not have one yet.
+	 */
+	public synchronized int intern(String literal) {
+		Integer k = index.get(literal);
+		if (k == null) {
+			k = literals.size();
+			index.put(literal, k);
+			literals.add(literal);
+		}
+		return k;
+	}
+
+	/**
+	 * The label of literal, which will be part of the pool's output.
+	 */
+	public synchronized String label(String literal) {
+		int k = intern(literal);
+		used.set(k);
+		return PREFIX + k;
+	}
+
+	/**
+	 * The number of distinct literals.
+	 */
+	public synchronized int size() {
+		return literals.size();
+	}
+
+	/**
+	 * Writes the literals that have been labeled, if any, as one .data
+	 * section. (Literals in code that was eliminated are left out.)
+	 */
+	public synchronized void codeGen() {
+		if (used.isEmpty()) {
+			return;
+		}
+		Codegen.generate(".data");
+		for (int k = used.nextSetBit(0); k >= 0; k = used.nextSetBit(k + 1)) {
+			Codegen.genLabel(PREFIX + k);
+			Codegen.generate(".asciiz ", literals.get(k));
+		}
+	}
+}
@@ -48,6 +48,7 @@ public class SymTable {
           throw new DuplicateSymException();
         } else {
           symTab.put(name, sym);
+          CompilationContext.current().stats.symbols++;
         }
      }
 
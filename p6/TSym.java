@@ -101,6 +101,17 @@ class FnSym extends TSym {
 	return myLocalSize;
     }
 
+    /**
+     * Adds a local of the given type below the ones the frame has, for a
+     * value an optimization keeps (see LoopHoister, ValueNumbering).
+     */
+    public TSym addLocal(Type type) {
+	TSym sym = new TSym(type);
+	sym.setOffset(-(myParamSize + 8 + myLocalSize));
+	myLocalSize += 4;
+	return sym;
+    }
+
 }
 
 /**
@@ -0,0 +1,68 @@
+import java_cup.runtime.*;
+
+/**
+ * TokenBuffer
+ *
+ * A Scanner that hands out tokens which were all scanned ahead of time.
+ * P6 uses it under --stats so that scanning and parsing can be timed as
+ * separate phases; benchmarks use it to parse the same input repeatedly.
+ *
+ * Each call to next_token returns a fresh Symbol (the parser marks the
+ * Symbols it consumes), so a buffer can be rewound and parsed again.
+ */
+class TokenBuffer implements Scanner {
+	private int[] syms = new int[256];
+	private Object[] values = new Object[256];
+	private int count = 0;
+	private int pos = 0;
+
+	/**
+	 * Reads tokens from scanner up to (not including) EOF.
+	 */
+	public static TokenBuffer scanAll(Scanner scanner) throws Exception {
+		TokenBuffer buf = new TokenBuffer();
+		Symbol s = scanner.next_token();
+		while (s.sym != sym.EOF) {
+			buf.add(s);
+			s = scanner.next_token();
+		}
+		return buf;
+	}
+
+	private void add(Symbol s) {
+		if (count == syms.length) {
+			int[] newSyms = new int[2 * count];
+			Object[] newValues = new Object[2 * count];
+			System.arraycopy(syms, 0, newSyms, 0, count);
+			System.arraycopy(values, 0, newValues, 0, count);
+			syms = newSyms;
+			values = newValues;
+		}
+		syms[count] = s.sym;
+		values[count] = s.value;
+		count++;
+	}
+
+	/**
+	 * Number of tokens in the buffer (EOF is not counted).
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Start handing out tokens from the beginning again.
+	 */
+	public void rewind() {
+		pos = 0;
+	}
+
+	public Symbol next_token() {
+		if (pos < count) {
+			Symbol s = new Symbol(syms[pos], values[pos]);
+			pos++;
+			return s;
+		}
+		return new Symbol(sym.EOF);
+	}
+}
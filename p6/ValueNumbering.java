@@ -0,0 +1,196 @@
+import java.util.*;
+
+/**
+ * ValueNumbering
+ *
+ * Local common subexpression elimination (--cse). When an operator
+ * expression in a statement list is computed again with the same operands,
+ * the first occurrence assigns its value to a new local of the function,
+ * and the later ones read that local.
+ *
+ * Expressions are compared by a key that spells out the operator and its
+ * operands. Each variable in a key carries its version, which changes
+ * whenever the variable may have been assigned: by =, ++, -- or cin, and,
+ * for a global, by any call. Two expressions with the same key therefore
+ * have the same value. Keys of +, *, == and != list their operands in a
+ * fixed order, so a + b and b + a match.
+ *
+ * Each statement list is processed on its own and twice (see
+ * StmtListNode.eliminateCommonSubexps): first to count the keys, then to
+ * rewrite the expressions whose key occurs more than once. Only expressions
+ * that are certainly evaluated, in order, are numbered. The right operand
+ * of && and || and everything inside an if, while or repeat statement are
+ * left out. Such a statement only gives the variables it may assign new
+ * versions; its own statement lists are processed separately. Expressions
+ * with side effects, and struct field accesses (which the code generator
+ * does not support), are never reused.
+ */
+public class ValueNumbering {
+	// the function the statement list belongs to, which gets the new
+	// locals
+	private final FnSym fn;
+
+	// numbers for the variables seen so far, and their current versions
+	private final Map<TSym, Integer> ids = new HashMap<TSym, Integer>();
+	private final Map<TSym, Integer> versions = new HashMap<TSym, Integer>();
+
+	// one more for every call, which may assign any global
+	private int calls;
+
+	// the keys seen so far, and how often they were seen in the first pass
+	private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+	// in the second pass: the key of each value kept so far -> its local
+	private Map<String, TSym> locals;
+
+	public ValueNumbering(FnSym fn) {
+		this.fn = fn;
+	}
+
+	/**
+	 * Starts the second pass over the same statements: from now on,
+	 * expressions seen more than once are rewritten.
+	 */
+	public void rewrite() {
+		versions.clear();
+		calls = 0;
+		locals = new HashMap<String, TSym>();
+	}
+
+	/**
+	 * The key of the current value of sym.
+	 */
+	public String key(TSym sym) {
+		Integer id = ids.get(sym);
+		if (id == null) {
+			id = ids.size();
+			ids.put(sym, id);
+		}
+		Integer version = versions.get(sym);
+		String key = "v" + id + "." + (version == null ? 0 : version);
+		return sym.isGlobal() ? key + "." + calls : key;
+	}
+
+	/**
+	 * The key of op applied to operands with keys k1 and k2 (either may
+	 * be null, which makes the result null). The operands of a
+	 * commutative op are put in order.
+	 */
+	public static String key(int op, String k1, String k2) {
+		if (k1 == null || k2 == null) {
+			return null;
+		}
+		if ((op == IR.ADD || op == IR.MUL || op == IR.SEQ || op == IR.SNE)
+		    && k1.compareTo(k2) > 0) {
+			String k = k1;
+			k1 = k2;
+			k2 = k;
+		}
+		return "(" + IR.OP_NAMES[op] + " " + k1 + " " + k2 + ")";
+	}
+
+	/**
+	 * Gives sym a new version, after an assignment to it.
+	 */
+	public void assign(TSym sym) {
+		Integer version = versions.get(sym);
+		versions.put(sym, version == null ? 1 : version + 1);
+	}
+
+	/**
+	 * Gives every global a new version, after a call.
+	 */
+	public void call() {
+		calls++;
+	}
+
+	/**
+	 * Gives new versions to whatever stmt, which is not numbered itself,
+	 * may assign.
+	 */
+	public void skip(StmtNode stmt) {
+		Set<TSym> assigned = new HashSet<TSym>();
+		stmt.addAssigned(assigned);
+		Set<TSym> called = new HashSet<TSym>();
+		stmt.addCalls(called);
+		skip(assigned, called);
+	}
+
+	/**
+	 * Gives new versions to whatever the statements of list, which are
+	 * not numbered here, may assign.
+	 */
+	public void skip(StmtListNode list) {
+		Set<TSym> assigned = new HashSet<TSym>();
+		list.addAssigned(assigned);
+		Set<TSym> called = new HashSet<TSym>();
+		list.addCalls(called);
+		skip(assigned, called);
+	}
+
+	/**
+	 * Gives new versions to whatever exp, which may or may not be
+	 * evaluated, may assign.
+	 */
+	public void skip(ExpNode exp) {
+		Set<TSym> assigned = new HashSet<TSym>();
+		exp.addAssigned(assigned);
+		Set<TSym> called = new HashSet<TSym>();
+		exp.addCalls(called);
+		skip(assigned, called);
+	}
+
+	private void skip(Set<TSym> assigned, Set<TSym> called) {
+		for (TSym sym : assigned) {
+			assign(sym);
+		}
+		if (!called.isEmpty()) {
+			call();
+		}
+	}
+
+	/**
+	 * Called before the operands of exp, whose key is key, are numbered:
+	 * if its value was computed before, the expression to use in its
+	 * place (a read of the local, once rewriting), otherwise null.
+	 */
+	public ExpNode reuse(String key, ExpNode exp) {
+		if (key == null || !counts.containsKey(key)) {
+			return null;
+		}
+		if (locals == null) {
+			counts.put(key, counts.get(key) + 1);
+			return exp;
+		}
+		TSym local = locals.get(key);
+		return local == null ? null : use(local, exp);
+	}
+
+	/**
+	 * Called after the operands of exp, whose key is key, are numbered and
+	 * reuse returned null: returns the expression to use in its place,
+	 * which, if the value is needed again, also keeps it in a new local.
+	 */
+	public ExpNode define(String key, ExpNode exp) {
+		if (key == null) {
+			return exp;
+		}
+		if (locals == null) {
+			counts.put(key, 1);
+			return exp;
+		}
+		if (counts.get(key) < 2) {
+			return exp;
+		}
+		TSym local = fn.addLocal(exp.typeCheck());
+		locals.put(key, local);
+		return new AssignNode(use(local, exp), exp);
+	}
+
+	// a read of local at the position of exp
+	private static IdNode use(TSym local, ExpNode exp) {
+		IdNode id = new IdNode(exp.lineNum(), exp.charNum(), "_cse");
+		id.link(local);
+		return id;
+	}
+}
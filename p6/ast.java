@@ -1,5 +1,6 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 // **********************************************************************
 // The ASTnode class defines the nodes of the abstract-syntax tree that
@@ -61,6 +62,7 @@ import java.util.*;
 //       DotAccessNode       ExpNode, IdNode
 //       AssignNode          ExpNode, ExpNode
 //       CallExpNode         IdNode, ExpListNode
+//       InlineExpNode       linked list of AssignNode, StmtListNode, ExpNode
 //       UnaryExpNode        ExpNode
 //         UnaryMinusNode
 //         NotNode
@@ -107,6 +109,10 @@ import java.util.*;
 // **********************************************************************
 
 abstract class ASTnode {
+    protected ASTnode() {
+        CompilationContext.current().stats.astNodes++;
+    }
+
     // every subclass must provide an unparse operation
     abstract public void unparse(PrintWriter p, int indent);
 
@@ -135,7 +141,7 @@ class ProgramNode extends ASTnode {
     public void nameAnalysis() {
         SymTable symTab = new SymTable();
         myDeclList.nameAnalysis(symTab);
-        if (noMain) {
+        if (CompilationContext.current().noMain) {
             ErrMsg.fatal(0, 0, "No main function");
         }
     }
@@ -145,6 +151,7 @@ class ProgramNode extends ASTnode {
      */
     public void codeGen() {
         myDeclList.codeGen();
+        CompilationContext.current().strings.codeGen();
     }
 
     /**
@@ -154,13 +161,58 @@ class ProgramNode extends ASTnode {
         myDeclList.typeCheck();
     }
 
+    /**
+     * fold
+     * Constant folding and algebraic simplification, after type checking
+     * (see ExpNode.fold).
+     */
+    public void fold() {
+        myDeclList.fold();
+    }
+
+    /**
+     * eliminateDeadCode
+     * Removes unreachable statements and functions, after type checking
+     * (and folding, which turns more conditions into literals).
+     */
+    public void eliminateDeadCode() {
+        myDeclList.eliminateDeadCode();
+    }
+
+    /**
+     * inline
+     * Replaces calls to functions of at most maxSize AST nodes by their
+     * bodies (see Inliner), after type checking and before folding. A
+     * function's frame grows by at most frameBudget bytes.
+     */
+    public void inline(int maxSize, int frameBudget) {
+        myDeclList.inline(new Inliner(maxSize, frameBudget));
+    }
+
+    /**
+     * hoist
+     * Moves loop-invariant expressions out of while and repeat loops (see
+     * LoopHoister), after folding.
+     */
+    public void hoist() {
+        myDeclList.hoist(new LoopHoister());
+    }
+
+    /**
+     * eliminateCommonSubexps
+     * Computes repeated expressions in straight-line code once (see
+     * ValueNumbering), after folding.
+     */
+    public void eliminateCommonSubexps() {
+        myDeclList.eliminateCommonSubexps();
+    }
+
     public void unparse(PrintWriter p, int indent) {
         myDeclList.unparse(p, indent);
     }
 
     // 1 kid
     private DeclListNode myDeclList;
-    public static boolean noMain = true;
 }
 
 class DeclListNode extends ASTnode {
@@ -196,11 +248,126 @@ class DeclListNode extends ASTnode {
      * typeCheck
      */
     public void typeCheck() {
+        if (CompilationContext.current().parallel) {
+            parallelTypeCheck();
+            return;
+        }
         for (DeclNode node : myDecls) {
             node.typeCheck();
         }
     }
 
+    /**
+     * parallelTypeCheck
+     * Checks the function bodies concurrently (see forEachFunction), then
+     * prints all of their messages sorted by position, so the output does
+     * not depend on scheduling.
+     */
+    private void parallelTypeCheck() {
+        CompilationContext ctx = CompilationContext.current();
+        List<DeclNode> decls = new ArrayList<DeclNode>(myDecls);
+        CompilationContext[] children = forEachFunction(decls, false);
+
+        List<ErrMsg.Message> messages = new ArrayList<ErrMsg.Message>();
+        for (int i = 0; i < decls.size(); i++) {
+            if (children[i] == null) {
+                decls.get(i).typeCheck();
+            } else {
+                messages.addAll(children[i].deferred);
+                ctx.err |= children[i].err;
+                ctx.stats.add(children[i].stats);
+            }
+        }
+        ErrMsg.printSorted(ctx, messages);
+    }
+
+    /**
+     * fold
+     */
+    public void fold() {
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                ((FnDeclNode) node).fold();
+            }
+        }
+    }
+
+    /**
+     * inline
+     * Inlines calls in every function, in declaration order, so that a
+     * function's callees have been processed before it is.
+     */
+    public void inline(Inliner in) {
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                FnDeclNode fn = (FnDeclNode) node;
+                fn.inline(in);
+                in.add(fn);
+            }
+        }
+    }
+
+    /**
+     * hoist
+     * Hoists the loop invariants in every function.
+     */
+    public void hoist(LoopHoister h) {
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                ((FnDeclNode) node).hoist(h);
+            }
+        }
+    }
+
+    /**
+     * eliminateCommonSubexps
+     * Eliminates common subexpressions in every function.
+     */
+    public void eliminateCommonSubexps() {
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                ((FnDeclNode) node).eliminateCommonSubexps();
+            }
+        }
+    }
+
+    /**
+     * eliminateDeadCode
+     * Removes dead code from every function, then the functions that
+     * cannot be reached from main through the calls that are left.
+     */
+    public void eliminateDeadCode() {
+        Map<TSym, Set<TSym>> callees = new HashMap<TSym, Set<TSym>>();
+        Deque<TSym> work = new ArrayDeque<TSym>();
+        for (DeclNode node : myDecls) {
+            if (node instanceof FnDeclNode) {
+                FnDeclNode fn = (FnDeclNode) node;
+                callees.put(fn.sym(), fn.eliminateDeadCode());
+                if (fn.isMain()) {
+                    work.add(fn.sym());
+                }
+            }
+        }
+
+        Set<TSym> reached = new HashSet<TSym>(work);
+        while (!work.isEmpty()) {
+            for (TSym callee : callees.get(work.remove())) {
+                if (reached.add(callee)) {
+                    work.add(callee);
+                }
+            }
+        }
+
+        Iterator<DeclNode> it = myDecls.iterator();
+        while (it.hasNext()) {
+            DeclNode node = it.next();
+            if (node instanceof FnDeclNode
+                && !reached.contains(((FnDeclNode) node).sym())) {
+                it.remove();
+            }
+        }
+    }
+
     public void unparse(PrintWriter p, int indent) {
         Iterator it = myDecls.iterator();
         try {
@@ -217,6 +384,10 @@ class DeclListNode extends ASTnode {
      * codeGen
      */
     public void codeGen() {
+        if (CompilationContext.current().parallel) {
+            parallelCodeGen();
+            return;
+        }
         for (DeclNode node : myDecls) {
             if (node instanceof VarDeclNode) {
                 ((VarDeclNode) node).codeGen();
@@ -226,6 +397,75 @@ class DeclListNode extends ASTnode {
         }
     }
 
+    /**
+     * parallelCodeGen
+     * Generates each function into a buffer of its own (see
+     * forEachFunction). The buffers are then copied to the output in
+     * declaration order (with the globals in between), which gives exactly
+     * the serial output since every function numbers its labels itself.
+     */
+    private void parallelCodeGen() {
+        CompilationContext ctx = CompilationContext.current();
+        List<DeclNode> decls = new ArrayList<DeclNode>(myDecls);
+        CompilationContext[] children = forEachFunction(decls, true);
+
+        List<ErrMsg.Message> messages = new ArrayList<ErrMsg.Message>();
+        for (int i = 0; i < decls.size(); i++) {
+            DeclNode node = decls.get(i);
+            if (node instanceof VarDeclNode) {
+                ((VarDeclNode) node).codeGen();
+            } else if (children[i] != null) {
+                children[i].out.writeTo(ctx.out);
+                messages.addAll(children[i].deferred);
+                ctx.err |= children[i].err;
+                ctx.stats.add(children[i].stats);
+            }
+        }
+        ErrMsg.printSorted(ctx, messages);
+    }
+
+    /**
+     * forEachFunction
+     * Runs codeGen (if codeGen is true) or typeCheck of every FnDeclNode in
+     * decls on the fork/join pool, each in a child context of its own (with
+     * an in-memory output when generating code). Returns the child
+     * contexts, at the indices of their functions; other entries are null.
+     */
+    private static CompilationContext[] forEachFunction(List<DeclNode> decls,
+                                                        final boolean codeGen) {
+        CompilationContext ctx = CompilationContext.current();
+        int n = decls.size();
+        CompilationContext[] children = new CompilationContext[n];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        for (int i = 0; i < n; i++) {
+            if (!(decls.get(i) instanceof FnDeclNode)) {
+                continue;
+            }
+            final FnDeclNode fn = (FnDeclNode) decls.get(i);
+            final CompilationContext child =
+                ctx.child(codeGen ? new AsmWriter() : null);
+            children[i] = child;
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    CompilationContext prev = CompilationContext.enter(child);
+                    try {
+                        if (codeGen) {
+                            fn.codeGen();
+                        } else {
+                            fn.typeCheck();
+                        }
+                    } finally {
+                        CompilationContext.restore(prev);
+                    }
+                    return null;
+                }
+            });
+        }
+        CompilationContext.invokeAll(tasks);
+        return children;
+    }
+
     // list of kids (DeclNodes)
     private List<DeclNode> myDecls;
 }
@@ -260,6 +500,24 @@ class FormalsListNode extends ASTnode {
         return myFormals.size();
     }
 
+    /**
+     * bind
+     * Assignments of the arguments args to the formals' slots in the
+     * caller (see Inliner), or null if a formal cannot be given one.
+     */
+    public List<AssignNode> bind(ExpListNode args, Inliner in) {
+        List<AssignNode> bindings = new ArrayList<AssignNode>();
+        int k = 0;
+        for (FormalDeclNode node : myFormals) {
+            AssignNode binding = node.bind(args.get(k++), in);
+            if (binding == null) {
+                return null;
+            }
+            bindings.add(binding);
+        }
+        return bindings;
+    }
+
     public void unparse(PrintWriter p, int indent) {
         Iterator<FormalDeclNode> it = myFormals.iterator();
         if (it.hasNext()) { // if there is at least one element
@@ -307,6 +565,46 @@ class FnBodyNode extends ASTnode {
         myStmtList.codeGen(label);
     }
 
+    public void lower(IR ir) {
+        myStmtList.lower(ir);
+    }
+
+    public void fold() {
+        myStmtList.fold();
+    }
+
+    public void eliminateDeadCode(Set<TSym> calls) {
+        myStmtList.eliminateDeadCode(calls);
+    }
+
+    public void addCalls(Set<TSym> calls) {
+        myStmtList.addCalls(calls);
+    }
+
+    public void markTailCalls() {
+        myStmtList.markTailCalls();
+    }
+
+    public void inline(Inliner in) {
+        myStmtList.inline(in);
+    }
+
+    public void hoist(LoopHoister h) {
+        myStmtList.hoist(h);
+    }
+
+    public void eliminateCommonSubexps(FnSym fn) {
+        myStmtList.eliminateCommonSubexps(fn);
+    }
+
+    public InlineExpNode expand(List<AssignNode> bindings, Inliner in) {
+        return myStmtList.expand(bindings, in);
+    }
+
+    public int nodeCount() {
+        return myStmtList.nodeCount();
+    }
+
     // 2 kids
     private DeclListNode myDeclList;
     private StmtListNode myStmtList;
@@ -349,6 +647,183 @@ class StmtListNode extends ASTnode {
         }
     }
 
+    public void lower(IR ir) {
+        for (StmtNode node : myStmts) {
+            node.lower(ir);
+        }
+    }
+
+    public void fold() {
+        for (StmtNode node : myStmts) {
+            node.fold();
+        }
+    }
+
+    public void addCalls(Set<TSym> calls) {
+        for (StmtNode node : myStmts) {
+            node.addCalls(calls);
+        }
+    }
+
+    public void addAssigned(Set<TSym> assigned) {
+        for (StmtNode node : myStmts) {
+            node.addAssigned(assigned);
+        }
+    }
+
+    public void markTailCalls() {
+        if (!myStmts.isEmpty()) {
+            myStmts.get(myStmts.size() - 1).markTailCalls();
+        }
+    }
+
+    public boolean isEmpty() {
+        return myStmts.isEmpty();
+    }
+
+    /**
+     * appendTo
+     * Appends the statements to stmts.
+     */
+    public void appendTo(List<StmtNode> stmts) {
+        stmts.addAll(myStmts);
+    }
+
+    /**
+     * inline
+     * Replaces the statements by their versions with calls inlined (see
+     * StmtNode.inline).
+     */
+    public void inline(Inliner in) {
+        List<StmtNode> stmts = new ArrayList<StmtNode>();
+        for (StmtNode node : myStmts) {
+            node.inline(stmts, in);
+        }
+        myStmts = stmts;
+    }
+
+    /**
+     * hoist
+     * Replaces the statements by their versions with loop invariants
+     * hoisted, each loop preceded by what was hoisted out of it (see
+     * StmtNode.hoist).
+     */
+    public void hoist(LoopHoister h) {
+        List<StmtNode> stmts = new ArrayList<StmtNode>();
+        for (StmtNode node : myStmts) {
+            node.hoist(stmts, h);
+        }
+        myStmts = stmts;
+    }
+
+    /**
+     * eliminateCommonSubexps
+     * Numbers the values the statements compute twice (see
+     * ValueNumbering): once to find the repeated ones, once to keep and
+     * reuse them. Then does the same for the statement lists inside the
+     * statements, each on its own.
+     */
+    public void eliminateCommonSubexps(FnSym fn) {
+        ValueNumbering vn = new ValueNumbering(fn);
+        for (StmtNode node : myStmts) {
+            node.number(vn);
+        }
+        vn.rewrite();
+        for (StmtNode node : myStmts) {
+            node.number(vn);
+        }
+        for (StmtNode node : myStmts) {
+            node.eliminateCommonSubexps(fn);
+        }
+    }
+
+    /**
+     * copy
+     * A copy of the statements for inlining (see Inliner), or null if one
+     * of them cannot be copied.
+     */
+    public StmtListNode copy(Inliner in) {
+        return copy(myStmts.size(), in);
+    }
+
+    /**
+     * nodeCount
+     * The number of AST nodes in the statements (see StmtNode.nodeCount).
+     */
+    public int nodeCount() {
+        int count = 1;
+        for (StmtNode node : myStmts) {
+            count += node.nodeCount();
+        }
+        return count;
+    }
+
+    // the first n statements
+    private StmtListNode copy(int n, Inliner in) {
+        List<StmtNode> copies = new ArrayList<StmtNode>();
+        for (StmtNode node : myStmts.subList(0, n)) {
+            StmtNode copy = node.copy(in);
+            if (copy == null) {
+                return null;
+            }
+            copies.add(copy);
+        }
+        return new StmtListNode(copies);
+    }
+
+    /**
+     * expand
+     * The body of a function as the value of a call to it: the bindings of
+     * its arguments, a copy of these statements, and a copy of the value
+     * of a final return statement, if any. Null if the statements cannot
+     * be copied, which includes any other return statement.
+     */
+    public InlineExpNode expand(List<AssignNode> bindings, Inliner in) {
+        int n = myStmts.size();
+        ExpNode result = null;
+        if (n > 0 && myStmts.get(n - 1) instanceof ReturnStmtNode) {
+            n--;
+            ExpNode exp = ((ReturnStmtNode) myStmts.get(n)).exp();
+            if (exp != null) {
+                result = exp.copy(in);
+                if (result == null) {
+                    return null;
+                }
+            }
+        }
+        StmtListNode body = copy(n, in);
+        if (body == null) {
+            return null;
+        }
+        return new InlineExpNode(bindings, body, result);
+    }
+
+    /**
+     * eliminateDeadCode
+     * Replaces the statements by what is left of them (see
+     * StmtNode.eliminateDeadCode), adding the functions they call to calls.
+     */
+    public void eliminateDeadCode(Set<TSym> calls) {
+        List<StmtNode> live = new ArrayList<StmtNode>();
+        eliminateDeadCode(live, calls);
+        myStmts = live;
+    }
+
+    /**
+     * eliminateDeadCode
+     * Appends what is left of the statements to live, up to the first one
+     * that ends in a return; anything after that is never reached.
+     */
+    public void eliminateDeadCode(List<StmtNode> live, Set<TSym> calls) {
+        for (StmtNode node : myStmts) {
+            node.eliminateDeadCode(live, calls);
+            if (!live.isEmpty()
+                && live.get(live.size() - 1) instanceof ReturnStmtNode) {
+                return;
+            }
+        }
+    }
+
     // list of kids (StmtNodes)
     private List<StmtNode> myStmts;
 }
@@ -362,6 +837,10 @@ class ExpListNode extends ASTnode {
         return myExps.size();
     }
 
+    public ExpNode get(int k) {
+        return myExps.get(k);
+    }
+
     /**
      * nameAnalysis
      * Given a symbol table symTab, process each exp in the list.
@@ -409,7 +888,107 @@ class ExpListNode extends ASTnode {
 
     public void codeGen() {
         for (ExpNode node : myExps) {
-            node.codeGen();
+            node.codeGenPush();
+        }
+    }
+
+    /**
+     * fold
+     * Folds each expression in the list (see ExpNode.fold).
+     */
+    public void fold() {
+        ListIterator<ExpNode> it = myExps.listIterator();
+        while (it.hasNext()) {
+            it.set(it.next().fold());
+        }
+    }
+
+    /**
+     * addCalls
+     * Adds the functions the expressions call to calls.
+     */
+    public void addCalls(Set<TSym> calls) {
+        for (ExpNode node : myExps) {
+            node.addCalls(calls);
+        }
+    }
+
+    /**
+     * inline
+     * Inlines the calls in each expression (see ExpNode.inline).
+     */
+    public void inline(Inliner in) {
+        ListIterator<ExpNode> it = myExps.listIterator();
+        while (it.hasNext()) {
+            it.set(it.next().inline(in));
+        }
+    }
+
+    public void addAssigned(Set<TSym> assigned) {
+        for (ExpNode node : myExps) {
+            node.addAssigned(assigned);
+        }
+    }
+
+    /**
+     * hoist
+     * Hoists the loop invariants in each expression (see ExpNode.hoist).
+     */
+    public void hoist(LoopHoister h, int bound) {
+        ListIterator<ExpNode> it = myExps.listIterator();
+        while (it.hasNext()) {
+            it.set(it.next().hoist(h, bound));
+        }
+    }
+
+    /**
+     * number
+     * Numbers the values of the expressions, in order (see
+     * ExpNode.number).
+     */
+    public void number(ValueNumbering vn) {
+        ListIterator<ExpNode> it = myExps.listIterator();
+        while (it.hasNext()) {
+            it.set(it.next().number(vn));
+        }
+    }
+
+    /**
+     * copy
+     * A copy of the list for inlining, or null if an expression cannot be
+     * copied.
+     */
+    public ExpListNode copy(Inliner in) {
+        List<ExpNode> copies = new LinkedList<ExpNode>();
+        for (ExpNode node : myExps) {
+            ExpNode copy = node.copy(in);
+            if (copy == null) {
+                return null;
+            }
+            copies.add(copy);
+        }
+        return new ExpListNode(copies);
+    }
+
+    /**
+     * nodeCount
+     * The number of AST nodes in the list (see StmtNode.nodeCount).
+     */
+    public int nodeCount() {
+        int count = 1;
+        for (ExpNode node : myExps) {
+            count += node.nodeCount();
+        }
+        return count;
+    }
+
+    /**
+     * lower
+     * Appends IR that pushes each expression, as arguments to a call.
+     */
+    public void lower(IR ir) {
+        for (ExpNode node : myExps) {
+            ir.emit(IR.ARG, -1, node.lower(ir), -1);
         }
     }
 
@@ -608,7 +1187,7 @@ class FnDeclNode extends DeclNode {
 
         else { // add function name to local symbol table
             if (name.equals("main"))
-                ProgramNode.noMain = false;
+                CompilationContext.current().noMain = false;
             try {
                 sym = new FnSym(myType.type(), myFormalsList.length());
                 symTab.addDecl(name, sym);
@@ -678,27 +1257,176 @@ class FnDeclNode extends DeclNode {
     }
 
     public void codeGen() {
-        String label = "_" + myId.name() + "_Exit";
-        Codegen.generate(".text");
-        if (myId.isMain()) {
-            Codegen.generate(".globl main");
-            Codegen.generate("main:");
+        // labels are numbered per function, so that functions can be
+        // generated independently of each other
+        CompilationContext ctx = CompilationContext.current();
+        ctx.labelPrefix = ".L" + myId.name() + "_";
+        ctx.currLabel = 0;
+
+        // a call at the very end of a void function is a tail call
+        if (myType.type().isVoidType()) {
+            myBody.markTailCalls();
+        }
+
+        // under --peephole, collect the function's code and clean it up
+        // on its way to the real output
+        AsmWriter out = ctx.out;
+        if (ctx.peephole) {
+            if (ctx.scratch == null) {
+                ctx.scratch = new AsmWriter();
+            }
+            ctx.scratch.reset();
+            ctx.out = ctx.scratch;
+        }
+
+        if (ctx.ir) {
+            MipsEmitter.emit(lower());
         } else {
-            Codegen.generate("_"+myId.name());
-        }
-        // enter
-        Codegen.genPush(Codegen.RA);
-        Codegen.genPush(Codegen.FP);
-        Codegen.generate("addu", Codegen.FP, Codegen.SP, myId.paramSize()+8);
-        Codegen.generate("subu", Codegen.SP, Codegen.SP, myId.localSize());
-        myBody.codeGen(label);
-        Codegen.genLabel(label);
-        // exit
-        Codegen.generateIndexed("lw", Codegen.RA, Codegen.FP, 0);
-        Codegen.generate("move", Codegen.T0, Codegen.FP);
-        Codegen.generateIndexed("lw", Codegen.FP, Codegen.FP, -4);
-        Codegen.generate("move", Codegen.SP, Codegen.T0);
-        Codegen.generate("jr", Codegen.RA);
+            String label = "_" + myId.name() + "_Exit";
+            boolean leaf = isLeaf();
+            boolean frameless = leaf && myId.paramSize() == 0
+                                && myId.localSize() == 0;
+            Codegen.generate(".text");
+            if (myId.isMain()) {
+                Codegen.generate(".globl main");
+                Codegen.genLabel("main");
+            } else {
+                Codegen.genLabel("_"+myId.name());
+            }
+            ctx.fnParamSize = myId.paramSize();
+            ctx.fnLeaf = leaf;
+            if (!frameless) {
+                Codegen.genEnter(myId.paramSize(), myId.localSize(), leaf);
+            }
+            myBody.codeGen(label);
+            Codegen.genLabel(label);
+            if (frameless) {
+                Codegen.genFramelessExit(0);
+            } else {
+                Codegen.genExit(myId.paramSize(), leaf);
+            }
+        }
+
+        if (ctx.peephole) {
+            Peephole.optimize(ctx.out.contents(), out, ctx.stats);
+            ctx.out = out;
+        }
+    }
+
+    /**
+     * fold
+     * Constant-folds the expressions in the body.
+     */
+    public void fold() {
+        myBody.fold();
+    }
+
+    /**
+     * eliminateDeadCode
+     * Removes dead code from the body; returns the functions it still
+     * calls.
+     */
+    public Set<TSym> eliminateDeadCode() {
+        Set<TSym> calls = new HashSet<TSym>();
+        myBody.eliminateDeadCode(calls);
+        return calls;
+    }
+
+    public TSym sym() {
+        return myId.sym();
+    }
+
+    public boolean isMain() {
+        return myId.isMain();
+    }
+
+    /**
+     * inline
+     * Inlines the calls in the body that in can expand, giving the
+     * function the locals they need.
+     */
+    public void inline(Inliner in) {
+        in.enter((FnSym) myId.sym());
+        myBody.inline(in);
+        in.leave();
+    }
+
+    /**
+     * hoist
+     * Hoists the loop invariants in the body, giving the function a local
+     * for each.
+     */
+    public void hoist(LoopHoister h) {
+        h.enter((FnSym) myId.sym());
+        myBody.hoist(h);
+    }
+
+    /**
+     * eliminateCommonSubexps
+     * Eliminates common subexpressions in the body, giving the function a
+     * local for each value it keeps.
+     */
+    public void eliminateCommonSubexps() {
+        myBody.eliminateCommonSubexps((FnSym) myId.sym());
+    }
+
+    /**
+     * expand
+     * A copy of the body that computes a call with arguments args in the
+     * caller's frame (see Inliner), or null if it cannot be inlined.
+     */
+    public InlineExpNode expand(ExpListNode args, Inliner in) {
+        List<AssignNode> bindings = myFormalsList.bind(args, in);
+        if (bindings == null) {
+            return null;
+        }
+        InlineExpNode body = myBody.expand(bindings, in);
+        if (body == null || (body.result() == null
+                             && !myType.type().isVoidType())) {
+            return null;
+        }
+        return body;
+    }
+
+    /**
+     * nodeCount
+     * The number of AST nodes in the statements of the body, which is how
+     * much inlining a call to this function copies.
+     */
+    public int nodeCount() {
+        return myBody.nodeCount();
+    }
+
+    /**
+     * isRecursive
+     * Does this function call itself?
+     */
+    public boolean isRecursive() {
+        Set<TSym> calls = new HashSet<TSym>();
+        myBody.addCalls(calls);
+        return calls.contains(myId.sym());
+    }
+
+    /**
+     * isLeaf
+     * Does this function make no calls? It then needs no saved return
+     * address, and without locals or parameters no frame at all.
+     */
+    public boolean isLeaf() {
+        Set<TSym> calls = new HashSet<TSym>();
+        myBody.addCalls(calls);
+        return calls.isEmpty();
+    }
+
+    /**
+     * lower
+     * The three-address code of this function.
+     */
+    public IR lower() {
+        IR ir = new IR(myId.name(), myId.paramSize(), myId.localSize());
+        myBody.lower(ir);
+        ir.finish();
+        return ir;
     }
 
     // 4 kids
@@ -780,6 +1508,19 @@ class FormalDeclNode extends DeclNode {
         p.print(myId.name());
     }
 
+    /**
+     * bind
+     * The assignment of arg to this formal's slot in the caller (see
+     * Inliner), or null if it cannot have one.
+     */
+    public AssignNode bind(ExpNode arg, Inliner in) {
+        IdNode slot = myId.copy(in);
+        if (slot == null) {
+            return null;
+        }
+        return new AssignNode(slot, arg);
+    }
+
     // 2 kids
     private TypeNode myType;
     private IdNode myId;
@@ -952,6 +1693,109 @@ abstract class StmtNode extends ASTnode {
 
     abstract public void codeGen(String label);
 
+    /**
+     * lower
+     * Appends the IR for this statement.
+     */
+    abstract public void lower(IR ir);
+
+    /**
+     * fold
+     * Folds the expressions in this statement (see ExpNode.fold).
+     */
+    abstract public void fold();
+
+    /**
+     * eliminateDeadCode
+     * Removes the dead code inside this statement, adds the functions it
+     * may call to calls, and appends what is left of it to live: itself,
+     * or, for a branch decided by a literal, the statements that run.
+     */
+    public void eliminateDeadCode(List<StmtNode> live, Set<TSym> calls) {
+        addCalls(calls);
+        live.add(this);
+    }
+
+    /**
+     * addCalls
+     * Adds the functions called by this statement (its expressions and
+     * the statements inside it) to calls.
+     */
+    protected void addCalls(Set<TSym> calls) {
+    }
+
+    /**
+     * addAssigned
+     * Adds the variables this statement (its expressions and the
+     * statements inside it) assigns to assigned.
+     */
+    protected void addAssigned(Set<TSym> assigned) {
+    }
+
+    /**
+     * markTailCalls
+     * Called on the statement that ends a void function: a call statement
+     * there, or at the end of a branch there, becomes a tail call (see
+     * CallExpNode.genTailCall).
+     */
+    public void markTailCalls() {
+    }
+
+    /**
+     * inline
+     * Inlines the calls in this statement (see Inliner) and appends it to
+     * stmts; a call statement whose call was inlined is replaced by the
+     * statements of the callee's body.
+     */
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        stmts.add(this);
+    }
+
+    /**
+     * hoist
+     * Hoists the loop invariants in this statement (see LoopHoister) and
+     * appends it to stmts; a loop is preceded by the assignments of what
+     * was hoisted out of it.
+     */
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        stmts.add(this);
+    }
+
+    /**
+     * number
+     * Numbers the values this statement computes (see ValueNumbering),
+     * rewriting its expressions in the second pass. This version is for
+     * statements whose expressions are not numbered; it only gives what
+     * they assign new versions.
+     */
+    public void number(ValueNumbering vn) {
+        vn.skip(this);
+    }
+
+    /**
+     * eliminateCommonSubexps
+     * Eliminates common subexpressions in the statement lists inside this
+     * statement (see StmtListNode.eliminateCommonSubexps).
+     */
+    public void eliminateCommonSubexps(FnSym fn) {
+    }
+
+    /**
+     * copy
+     * A copy of this statement with the callee's variables renamed, for
+     * inlining (see Inliner), or null if it cannot be copied.
+     */
+    public StmtNode copy(Inliner in) {
+        return null;
+    }
+
+    /**
+     * nodeCount
+     * The number of AST nodes in this statement, which is how much inlining
+     * a function with it in its body copies (see Inliner).
+     */
+    abstract public int nodeCount();
+
     abstract public void typeCheck(Type retType);
 }
 
@@ -986,7 +1830,55 @@ class AssignStmtNode extends StmtNode {
 
     @Override
     public void codeGen(String label) {
-        myAssign.codeGen();
+        myAssign.codeGenInto(Codegen.T0);
+    }
+
+    @Override
+    public void lower(IR ir) {
+        myAssign.lower(ir);
+    }
+
+    @Override
+    public void fold() {
+        myAssign.fold();
+    }
+
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        myAssign.addCalls(calls);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        myAssign.addAssigned(assigned);
+    }
+
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        myAssign.inline(in);
+        stmts.add(this);
+    }
+
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        myAssign.hoist(h, h.depth());
+        stmts.add(this);
+    }
+
+    @Override
+    public void number(ValueNumbering vn) {
+        myAssign.number(vn);
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myAssign.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        AssignNode assign = myAssign.copy(in);
+        return assign == null ? null : new AssignStmtNode(assign);
     }
 }
 
@@ -1026,16 +1918,47 @@ class PostIncStmtNode extends StmtNode {
 
     @Override
     public void codeGen(String label) {
+        if (!(myExp instanceof IdNode)) {
+            DotAccessExpNode.unsupported(myExp);
+            return;
+        }
         IdNode id = (IdNode)myExp;
-        id.codeGenAddr();
-        id.codeGen();
+        id.genLoad(Codegen.T0);
+        Codegen.generate("add", Codegen.T0, Codegen.T0, 1);
+        id.genStore(Codegen.T0);
+    }
 
-        Codegen.genPop(Codegen.T0);
-        Codegen.genPop(Codegen.T1);
+    @Override
+    public void lower(IR ir) {
+        if (!(myExp instanceof IdNode)) {
+            DotAccessExpNode.unsupported(myExp);
+            return;
+        }
+        IdNode id = (IdNode)myExp;
+        id.lowerStore(ir, ir.compute(IR.ADDI, id.lower(ir), 1));
+    }
 
-        Codegen.generate("add", Codegen.T0, Codegen.T0, 1);
+    @Override
+    public void fold() {
+        // nothing to fold
+    }
 
-        Codegen.genPush(Codegen.T0);
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        return exp == null ? null : new PostIncStmtNode(exp);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        if (myExp instanceof IdNode) {
+            assigned.add(((IdNode) myExp).sym());
+        }
     }
 
 }
@@ -1076,15 +1999,47 @@ class PostDecStmtNode extends StmtNode {
 
     @Override
     public void codeGen(String label) {
+        if (!(myExp instanceof IdNode)) {
+            DotAccessExpNode.unsupported(myExp);
+            return;
+        }
         IdNode id = (IdNode)myExp;
-        id.codeGenAddr();
-        id.codeGen();
-        Codegen.genPop(Codegen.T0);
-        Codegen.genPop(Codegen.T1);
-
+        id.genLoad(Codegen.T0);
         Codegen.generate("sub", Codegen.T0, Codegen.T0, 1);
+        id.genStore(Codegen.T0);
+    }
 
-        Codegen.genPush(Codegen.T0);
+    @Override
+    public void lower(IR ir) {
+        if (!(myExp instanceof IdNode)) {
+            DotAccessExpNode.unsupported(myExp);
+            return;
+        }
+        IdNode id = (IdNode)myExp;
+        id.lowerStore(ir, ir.compute(IR.ADDI, id.lower(ir), -1));
+    }
+
+    @Override
+    public void fold() {
+        // nothing to fold
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        return exp == null ? null : new PostDecStmtNode(exp);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        if (myExp instanceof IdNode) {
+            assigned.add(((IdNode) myExp).sym());
+        }
     }
 }
 
@@ -1137,14 +2092,44 @@ class ReadStmtNode extends StmtNode {
     public void codeGen(String label) {
         Codegen.generate("li", Codegen.V0, 5);
         Codegen.generate("syscall");
-        myExp.codeGen();
-        IdNode id = (IdNode) myExp;
-        id.codeGenAddr();
-        Codegen.genPop(Codegen.T0);
-        if (id.sym().getType().isIntType()) {
-            Codegen.generate("sw", Codegen.V0, Codegen.T0);
-        } else if (id.sym().getType().isBoolType()) {
-            Codegen.generate("sw", Codegen.T1, Codegen.T0);
+        if (myExp instanceof IdNode) {
+            ((IdNode) myExp).genStore(Codegen.V0);
+        } else {
+            DotAccessExpNode.unsupported(myExp);
+        }
+    }
+
+    @Override
+    public void lower(IR ir) {
+        int v = ir.newReg();
+        ir.emit(IR.READ, v, -1, -1);
+        if (myExp instanceof IdNode) {
+            ((IdNode) myExp).lowerStore(ir, v);
+        } else {
+            DotAccessExpNode.unsupported(myExp);
+        }
+    }
+
+    @Override
+    public void fold() {
+        // nothing to fold
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        return exp == null ? null : new ReadStmtNode(exp);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        if (myExp instanceof IdNode) {
+            assigned.add(((IdNode) myExp).sym());
         }
     }
 }
@@ -1203,8 +2188,7 @@ class WriteStmtNode extends StmtNode {
 
     @Override
     public void codeGen(String label) {
-        myExp.codeGen();
-        Codegen.genPop(Codegen.A0);
+        myExp.codeGenInto(Codegen.A0);
         if (myType.isBoolType() || myType.isIntType()) {
             Codegen.generate("li", Codegen.V0, "1");
         } else if (myType.isStringType()) {
@@ -1212,6 +2196,60 @@ class WriteStmtNode extends StmtNode {
         }
         Codegen.generate("syscall");
     }
+
+    @Override
+    public void lower(IR ir) {
+        int v = myExp.lower(ir);
+        ir.emit(myType.isStringType() ? IR.WRITES : IR.WRITEI, -1, v, -1);
+    }
+
+    @Override
+    public void fold() {
+        myExp = myExp.fold();
+    }
+
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        myExp.addCalls(calls);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        myExp.addAssigned(assigned);
+    }
+
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        myExp = myExp.inline(in);
+        stmts.add(this);
+    }
+
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        myExp = myExp.hoist(h, h.depth());
+        stmts.add(this);
+    }
+
+    @Override
+    public void number(ValueNumbering vn) {
+        myExp = myExp.number(vn);
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        if (exp == null) {
+            return null;
+        }
+        WriteStmtNode copy = new WriteStmtNode(exp);
+        copy.myType = myType;
+        return copy;
+    }
 }
 
 class IfStmtNode extends StmtNode {
@@ -1275,36 +2313,120 @@ class IfStmtNode extends StmtNode {
 
     @Override
     public void codeGen(String label) {
-        Codegen.generate("if");
         String tmpLabel = Codegen.nextLabel();
-        myExp.codeGen();
-
-        Codegen.genPop(Codegen.T0);
-        Codegen.generate("beq", Codegen.T0, Codegen.FALSE, tmpLabel);
+        myExp.genJump(tmpLabel, false, 0);
         myStmtList.codeGen(label);
 
         Codegen.genLabel(tmpLabel);
-        Codegen.generate("end if");
     }
-}
 
-class IfElseStmtNode extends StmtNode {
-    public IfElseStmtNode(ExpNode exp, DeclListNode dlist1,
-            StmtListNode slist1, DeclListNode dlist2,
-            StmtListNode slist2) {
-        myExp = exp;
-        myThenDeclList = dlist1;
-        myThenStmtList = slist1;
-        myElseDeclList = dlist2;
-        myElseStmtList = slist2;
+    @Override
+    public void lower(IR ir) {
+        int skip = ir.newLabel();
+        myExp.lowerJump(ir, skip, false);
+        myStmtList.lower(ir);
+        ir.emit(IR.LABEL, -1, skip, -1);
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, do:
-     * - process the condition
-     * - enter a new scope
-     * - process the decls and stmts of then
+    @Override
+    public void fold() {
+        myExp = myExp.fold();
+        myStmtList.fold();
+    }
+
+    // if (true) runs its body in place; if (false) is dropped
+    @Override
+    public void eliminateDeadCode(List<StmtNode> live, Set<TSym> calls) {
+        if (myExp.isConst()) {
+            if (myExp.constValue() != 0) {
+                myStmtList.eliminateDeadCode(live, calls);
+            }
+            return;
+        }
+        myExp.addCalls(calls);
+        myStmtList.eliminateDeadCode(calls);
+        live.add(this);
+    }
+
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        myExp.addCalls(calls);
+        myStmtList.addCalls(calls);
+    }
+
+    @Override
+    public void markTailCalls() {
+        myStmtList.markTailCalls();
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        myExp.addAssigned(assigned);
+        myStmtList.addAssigned(assigned);
+    }
+
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        myExp = myExp.inline(in);
+        myStmtList.inline(in);
+        stmts.add(this);
+    }
+
+    // the body may not run on every iteration of the loops around it
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        myExp = myExp.hoist(h, h.depth());
+        int floor = h.enterBranch();
+        myStmtList.hoist(h);
+        h.leaveBranch(floor);
+        stmts.add(this);
+    }
+
+    // the condition is always evaluated, the body maybe not
+    @Override
+    public void number(ValueNumbering vn) {
+        myExp = myExp.number(vn);
+        vn.skip(myStmtList);
+    }
+
+    @Override
+    public void eliminateCommonSubexps(FnSym fn) {
+        myStmtList.eliminateCommonSubexps(fn);
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount() + myStmtList.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        StmtListNode stmtList = myStmtList.copy(in);
+        if (exp == null || stmtList == null) {
+            return null;
+        }
+        return new IfStmtNode(exp, myDeclList, stmtList);
+    }
+}
+
+class IfElseStmtNode extends StmtNode {
+    public IfElseStmtNode(ExpNode exp, DeclListNode dlist1,
+            StmtListNode slist1, DeclListNode dlist2,
+            StmtListNode slist2) {
+        myExp = exp;
+        myThenDeclList = dlist1;
+        myThenStmtList = slist1;
+        myElseDeclList = dlist2;
+        myElseStmtList = slist2;
+    }
+
+    /**
+     * nameAnalysis
+     * Given a symbol table symTab, do:
+     * - process the condition
+     * - enter a new scope
+     * - process the decls and stmts of then
      * - exit the scope
      * - enter a new scope
      * - process the decls and stmts of else
@@ -1375,22 +2497,122 @@ class IfElseStmtNode extends StmtNode {
 
     @Override
     public void codeGen(String label) {
-        Codegen.generate("if else");
         String falseLabel = Codegen.nextLabel();
         String endLabel = Codegen.nextLabel();
 
-        myExp.codeGen();
-
-        Codegen.genPop(Codegen.T0);
-        Codegen.generate("beqz", Codegen.T0, falseLabel);
+        myExp.genJump(falseLabel, false, 0);
 
         myThenStmtList.codeGen(label);
-        
         Codegen.generate("j", endLabel);
         Codegen.genLabel(falseLabel);
-        Codegen.genLabel(endLabel);
         myElseStmtList.codeGen(label);
-        Codegen.generate("end if else");
+        Codegen.genLabel(endLabel);
+    }
+
+    @Override
+    public void lower(IR ir) {
+        int falseLabel = ir.newLabel();
+        int endLabel = ir.newLabel();
+        myExp.lowerJump(ir, falseLabel, false);
+        myThenStmtList.lower(ir);
+        ir.emit(IR.JUMP, -1, endLabel, -1);
+        ir.emit(IR.LABEL, -1, falseLabel, -1);
+        myElseStmtList.lower(ir);
+        ir.emit(IR.LABEL, -1, endLabel, -1);
+    }
+
+    @Override
+    public void fold() {
+        myExp = myExp.fold();
+        myThenStmtList.fold();
+        myElseStmtList.fold();
+    }
+
+    // a literal condition leaves only the branch it selects
+    @Override
+    public void eliminateDeadCode(List<StmtNode> live, Set<TSym> calls) {
+        if (myExp.isConst()) {
+            if (myExp.constValue() != 0) {
+                myThenStmtList.eliminateDeadCode(live, calls);
+            } else {
+                myElseStmtList.eliminateDeadCode(live, calls);
+            }
+            return;
+        }
+        myExp.addCalls(calls);
+        myThenStmtList.eliminateDeadCode(calls);
+        myElseStmtList.eliminateDeadCode(calls);
+        live.add(this);
+    }
+
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        myExp.addCalls(calls);
+        myThenStmtList.addCalls(calls);
+        myElseStmtList.addCalls(calls);
+    }
+
+    @Override
+    public void markTailCalls() {
+        myThenStmtList.markTailCalls();
+        myElseStmtList.markTailCalls();
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        myExp.addAssigned(assigned);
+        myThenStmtList.addAssigned(assigned);
+        myElseStmtList.addAssigned(assigned);
+    }
+
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        myExp = myExp.inline(in);
+        myThenStmtList.inline(in);
+        myElseStmtList.inline(in);
+        stmts.add(this);
+    }
+
+    // neither branch runs on every iteration of the loops around it
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        myExp = myExp.hoist(h, h.depth());
+        int floor = h.enterBranch();
+        myThenStmtList.hoist(h);
+        myElseStmtList.hoist(h);
+        h.leaveBranch(floor);
+        stmts.add(this);
+    }
+
+    @Override
+    public void number(ValueNumbering vn) {
+        myExp = myExp.number(vn);
+        vn.skip(myThenStmtList);
+        vn.skip(myElseStmtList);
+    }
+
+    @Override
+    public void eliminateCommonSubexps(FnSym fn) {
+        myThenStmtList.eliminateCommonSubexps(fn);
+        myElseStmtList.eliminateCommonSubexps(fn);
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount() + myThenStmtList.nodeCount()
+            + myElseStmtList.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        StmtListNode thenStmtList = myThenStmtList.copy(in);
+        StmtListNode elseStmtList = myElseStmtList.copy(in);
+        if (exp == null || thenStmtList == null || elseStmtList == null) {
+            return null;
+        }
+        return new IfElseStmtNode(exp, myThenDeclList, thenStmtList,
+                                  myElseDeclList, elseStmtList);
     }
 }
 
@@ -1453,22 +2675,101 @@ class WhileStmtNode extends StmtNode {
     private DeclListNode myDeclList;
     private StmtListNode myStmtList;
 
+    // rotated: the condition is tested once in front of the loop, to skip
+    // it, and then at the bottom, so that an iteration takes a single
+    // (backward) branch
     @Override
     public void codeGen(String label) {
-        String whileStart = Codegen.nextLabel();
+        String whileBody = Codegen.nextLabel();
         String whileEnd = Codegen.nextLabel();
-        Codegen.generate("while");
-        Codegen.genLabel(whileStart);
-        myExp.codeGen();
-        Codegen.genPop(Codegen.T0);
-        Codegen.generate("beq", Codegen.T0, Codegen.FALSE, whileEnd); // Fill this in!
+        myExp.genJump(whileEnd, false, 0);
+        Codegen.genLabel(whileBody);
 
         myStmtList.codeGen(label);
 
-        Codegen.generate("j", whileStart);
+        myExp.genJump(whileBody, true, 0);
 
         Codegen.genLabel(whileEnd);
-        Codegen.generate("end while");
+    }
+
+    @Override
+    public void lower(IR ir) {
+        int whileBody = ir.newLabel();
+        int whileEnd = ir.newLabel();
+        myExp.lowerJump(ir, whileEnd, false);
+        ir.emit(IR.LABEL, -1, whileBody, -1);
+        myStmtList.lower(ir);
+        myExp.lowerJump(ir, whileBody, true);
+        ir.emit(IR.LABEL, -1, whileEnd, -1);
+    }
+
+    @Override
+    public void fold() {
+        myExp = myExp.fold();
+        myStmtList.fold();
+    }
+
+    // while (false) is dropped
+    @Override
+    public void eliminateDeadCode(List<StmtNode> live, Set<TSym> calls) {
+        if (myExp.isConst() && myExp.constValue() == 0) {
+            return;
+        }
+        myExp.addCalls(calls);
+        myStmtList.eliminateDeadCode(calls);
+        live.add(this);
+    }
+
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        myExp.addCalls(calls);
+        myStmtList.addCalls(calls);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        myExp.addAssigned(assigned);
+        myStmtList.addAssigned(assigned);
+    }
+
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        myExp = myExp.inline(in);
+        myStmtList.inline(in);
+        stmts.add(this);
+    }
+
+    // the condition is evaluated on every iteration, so it is part of the
+    // loop
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        h.enterLoop(this);
+        myExp = myExp.hoist(h, h.depth());
+        myStmtList.hoist(h);
+        stmts.addAll(h.leaveLoop());
+        stmts.add(this);
+    }
+
+    // (the condition is evaluated again after the body, so it is not
+    // numbered with the statements in front of the loop)
+    @Override
+    public void eliminateCommonSubexps(FnSym fn) {
+        myStmtList.eliminateCommonSubexps(fn);
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount() + myStmtList.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        StmtListNode stmtList = myStmtList.copy(in);
+        if (exp == null || stmtList == null) {
+            return null;
+        }
+        return new WhileStmtNode(exp, myDeclList, stmtList);
     }
 }
 
@@ -1489,6 +2790,14 @@ class RepeatStmtNode extends StmtNode {
      */
     public void nameAnalysis(SymTable symTab) {
         myExp.nameAnalysis(symTab);
+
+        // a local for the number of iterations left
+        TSym counter = new TSym(new IntType());
+        counter.setOffset(symTab.getOffset());
+        symTab.setOffset(symTab.getOffset() - 4);
+        myCounter = new IdNode(myExp.lineNum(), myExp.charNum(), "_repeat");
+        myCounter.link(counter);
+
         symTab.addScope();
         myDeclList.nameAnalysis(symTab);
         myStmtList.nameAnalysis(symTab);
@@ -1531,9 +2840,172 @@ class RepeatStmtNode extends StmtNode {
     private DeclListNode myDeclList;
     private StmtListNode myStmtList;
 
+    // the iterations left (a local set up by nameAnalysis)
+    private IdNode myCounter;
+
+    /**
+     * codeGen
+     * A counted loop: the count is evaluated once, skipping the loop if
+     * it is not positive, and stored in myCounter, which is decremented
+     * at the bottom of the loop with a single branch back while it is not
+     * zero. For a literal count the loop is unrolled (see unrolled).
+     */
     @Override
     public void codeGen(String label) {
-        // Don't need this.
+        if (myExp.isConst()) {
+            int[] plan = unrolled(myExp.constValue());
+            for (int i = 0; i < plan[0]; i++) {
+                myStmtList.codeGen(label);
+            }
+            if (plan[1] > 0) {
+                Codegen.generate("li", Codegen.T0, plan[1]);
+                genLoop(label, plan[2]);
+            }
+            return;
+        }
+        String end = Codegen.nextLabel();
+        myExp.codeGenInto(Codegen.T0);
+        Codegen.generate("blez", Codegen.T0, end);
+        genLoop(label, 1);
+        Codegen.genLabel(end);
+    }
+
+    // the loop, for a positive number of iterations in T0, each of which
+    // runs copies copies of the body
+    private void genLoop(String label, int copies) {
+        String top = Codegen.nextLabel();
+        myCounter.genStore(Codegen.T0);
+        Codegen.genLabel(top);
+        for (int i = 0; i < copies; i++) {
+            myStmtList.codeGen(label);
+        }
+        myCounter.genLoad(Codegen.T0);
+        Codegen.generate("sub", Codegen.T0, Codegen.T0, 1);
+        myCounter.genStore(Codegen.T0);
+        Codegen.generate("bnez", Codegen.T0, top);
+    }
+
+    @Override
+    public void lower(IR ir) {
+        if (myExp.isConst()) {
+            int[] plan = unrolled(myExp.constValue());
+            for (int i = 0; i < plan[0]; i++) {
+                myStmtList.lower(ir);
+            }
+            if (plan[1] > 0) {
+                lowerLoop(ir, ir.compute(IR.LI, plan[1], -1), plan[2]);
+            }
+            return;
+        }
+        int end = ir.newLabel();
+        int count = myExp.lower(ir);
+        ir.emit(IR.BLE, end, count, ir.compute(IR.LI, 0, -1));
+        lowerLoop(ir, count, 1);
+        ir.emit(IR.LABEL, -1, end, -1);
+    }
+
+    private void lowerLoop(IR ir, int count, int copies) {
+        int top = ir.newLabel();
+        myCounter.lowerStore(ir, count);
+        ir.emit(IR.LABEL, -1, top, -1);
+        for (int i = 0; i < copies; i++) {
+            myStmtList.lower(ir);
+        }
+        int left = ir.compute(IR.ADDI, myCounter.lower(ir), -1);
+        myCounter.lowerStore(ir, left);
+        ir.emit(IR.BNEZ, -1, left, top);
+    }
+
+    /**
+     * unrolled
+     * How to run the body count (a literal) times with the --unroll
+     * factor u: { copies of the body in a row, then iterations of a loop,
+     * each of which runs copies of the body }. The loop runs count / u
+     * iterations of u copies, after count % u copies in a row; if that
+     * would be a single iteration, all count copies run in a row.
+     */
+    private static int[] unrolled(int count) {
+        if (count <= 0) {
+            return new int[] { 0, 0, 0 };
+        }
+        int u = CompilationContext.current().unroll;
+        if (count / u == 1) {
+            return new int[] { count, 0, 0 };
+        }
+        return new int[] { count % u, count / u, u };
+    }
+
+    @Override
+    public void fold() {
+        myExp = myExp.fold();
+        myStmtList.fold();
+    }
+
+    @Override
+    public void eliminateDeadCode(List<StmtNode> live, Set<TSym> calls) {
+        myExp.addCalls(calls);
+        myStmtList.eliminateDeadCode(calls);
+        live.add(this);
+    }
+
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        myExp.addCalls(calls);
+        myStmtList.addCalls(calls);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        myExp.addAssigned(assigned);
+        myStmtList.addAssigned(assigned);
+    }
+
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        myExp = myExp.inline(in);
+        myStmtList.inline(in);
+        stmts.add(this);
+    }
+
+    // the count is evaluated once, before the loop, so only the body is
+    // part of it (but what the count assigns or calls still counts, as it
+    // runs after the hoisted code)
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        myExp = myExp.hoist(h, h.depth());
+        h.enterLoop(this);
+        myStmtList.hoist(h);
+        stmts.addAll(h.leaveLoop());
+        stmts.add(this);
+    }
+
+    // the count is evaluated once, the body maybe not
+    @Override
+    public void number(ValueNumbering vn) {
+        myExp = myExp.number(vn);
+        vn.skip(myStmtList);
+    }
+
+    @Override
+    public void eliminateCommonSubexps(FnSym fn) {
+        myStmtList.eliminateCommonSubexps(fn);
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myExp.nodeCount() + myStmtList.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        StmtListNode stmtList = myStmtList.copy(in);
+        if (exp == null || stmtList == null) {
+            return null;
+        }
+        RepeatStmtNode copy = new RepeatStmtNode(exp, myDeclList, stmtList);
+        copy.myCounter = myCounter.copy(in);
+        return copy;
     }
 }
 
@@ -1566,9 +3038,78 @@ class CallStmtNode extends StmtNode {
     // 1 kid
     private CallExpNode myCall;
 
+    // last thing a void function does (see markTailCalls)
+    private boolean myTail = false;
+
     @Override
     public void codeGen(String label) {
-        myCall.codeGen();
+        if (myTail) {
+            myCall.genTailCall();
+        } else {
+            myCall.genCall();
+        }
+    }
+
+    @Override
+    public void lower(IR ir) {
+        if (myTail) {
+            myCall.lowerTailCall(ir);
+        } else {
+            myCall.lowerCall(ir);
+        }
+    }
+
+    @Override
+    public void markTailCalls() {
+        myTail = true;
+    }
+
+    @Override
+    public void fold() {
+        myCall.fold();
+    }
+
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        myCall.addCalls(calls);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        myCall.addAssigned(assigned);
+    }
+
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        myCall.hoist(h, h.depth());
+        stmts.add(this);
+    }
+
+    @Override
+    public void number(ValueNumbering vn) {
+        myCall.number(vn);
+    }
+
+    // an inlined call leaves the statements of the callee
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        ExpNode exp = myCall.inline(in);
+        if (exp instanceof InlineExpNode) {
+            ((InlineExpNode) exp).appendTo(stmts, in);
+        } else {
+            stmts.add(this);
+        }
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myCall.nodeCount();
+    }
+
+    @Override
+    public StmtNode copy(Inliner in) {
+        CallExpNode call = myCall.copy(in);
+        return call == null ? null : new CallStmtNode(call);
     }
 }
 
@@ -1614,36 +3155,101 @@ class ReturnStmtNode extends StmtNode {
 
     }
 
+    // return f(...) is a tail call
     @Override
     public void codeGen(String label) {
-        if (myExp == null) {
+        if (myExp instanceof CallExpNode) {
+            ((CallExpNode) myExp).genTailCall();
             return;
-        } else if (myExp.typeCheck().isVoidType()) {
-            return;
-        } else {
-            Codegen.genPop(Codegen.V0);
+        }
+        if (myExp != null) {
+            myExp.codeGenInto(Codegen.V0);
         }
         Codegen.generate("j", label);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        addIndentation(p, indent);
-        p.print("return");
-        if (myExp != null) {
-            p.print(" ");
-            myExp.unparse(p, 0);
+    @Override
+    public void lower(IR ir) {
+        if (myExp instanceof CallExpNode) {
+            ((CallExpNode) myExp).lowerTailCall(ir);
+            return;
         }
-        p.println(";");
+        ir.emit(IR.RET, -1, myExp == null ? -1 : myExp.lower(ir), -1);
     }
 
-    // 1 kid
-    private ExpNode myExp; // possibly null
+    @Override
+    public void fold() {
+        if (myExp != null) {
+            myExp = myExp.fold();
+        }
+    }
 
-}
+    @Override
+    protected void addCalls(Set<TSym> calls) {
+        if (myExp != null) {
+            myExp.addCalls(calls);
+        }
+    }
+
+    // (a return is not copied: only a final one can be inlined, as the
+    // value of the call; see StmtListNode.expand)
+    @Override
+    public void inline(List<StmtNode> stmts, Inliner in) {
+        if (myExp != null) {
+            myExp = myExp.inline(in);
+        }
+        stmts.add(this);
+    }
+
+    @Override
+    protected void addAssigned(Set<TSym> assigned) {
+        if (myExp != null) {
+            myExp.addAssigned(assigned);
+        }
+    }
+
+    @Override
+    public void hoist(List<StmtNode> stmts, LoopHoister h) {
+        if (myExp != null) {
+            myExp = myExp.hoist(h, h.depth());
+        }
+        stmts.add(this);
+    }
+
+    @Override
+    public void number(ValueNumbering vn) {
+        if (myExp != null) {
+            myExp = myExp.number(vn);
+        }
+    }
+
+    @Override
+    public int nodeCount() {
+        return myExp == null ? 1 : 1 + myExp.nodeCount();
+    }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public void unparse(PrintWriter p, int indent) {
+        addIndentation(p, indent);
+        p.print("return");
+        if (myExp != null) {
+            p.print(" ");
+            myExp.unparse(p, 0);
+        }
+        p.println(";");
+    }
+
+    // 1 kid
+    private ExpNode myExp; // possibly null
+
+}
 
 // **********************************************************************
-// ExpNode and its subclasses
-// **********************************************************************
+// ExpNode and its subclasses
+// **********************************************************************
 
 abstract class ExpNode extends ASTnode {
     /**
@@ -1652,8 +3258,257 @@ abstract class ExpNode extends ASTnode {
     public void nameAnalysis(SymTable symTab) {
     }
 
+    /**
+     * codeGen
+     * Stack mode: generates code that pushes the value of this expression.
+     */
     abstract public void codeGen();
 
+    /**
+     * codeGenReg
+     * Register mode: generates code that leaves the value of this
+     * expression in Codegen.TEMPS[k]. Only TEMPS[k] and above may be
+     * changed; TEMPS[0..k-1] hold values of enclosing expressions.
+     */
+    abstract public void codeGenReg(int k);
+
+    /**
+     * lower
+     * Appends IR that computes the value of this expression into a new
+     * virtual register, and returns that register.
+     */
+    abstract public int lower(IR ir);
+
+    /**
+     * regNeed
+     * The Sethi-Ullman number of this expression: how many temporaries
+     * codeGenReg needs to evaluate it without spilling.
+     */
+    public int regNeed() {
+        return 1;
+    }
+
+    /**
+     * hasSideEffects
+     * Does evaluating this expression assign to a variable or call a
+     * function? If not, it may be evaluated out of order.
+     */
+    public boolean hasSideEffects() {
+        return false;
+    }
+
+    /**
+     * mayTrap
+     * Could evaluating this expression stop the program (a division by
+     * zero)? Such an expression must be evaluated even if its value is
+     * not needed.
+     */
+    public boolean mayTrap() {
+        return false;
+    }
+
+    /**
+     * addCalls
+     * Adds the functions this expression calls to calls.
+     */
+    public void addCalls(Set<TSym> calls) {
+    }
+
+    /**
+     * addAssigned
+     * Adds the variables this expression assigns to assigned.
+     */
+    public void addAssigned(Set<TSym> assigned) {
+    }
+
+    /**
+     * codeGenInto
+     * Generates code that leaves the value of this expression in register
+     * reg, in whichever mode the compilation uses.
+     */
+    public void codeGenInto(String reg) {
+        if (CompilationContext.current().registers == 0) {
+            codeGen();
+            Codegen.genPop(reg);
+            return;
+        }
+        codeGenReg(0);
+        if (!reg.equals(Codegen.TEMPS[0])) {
+            Codegen.generate("move", reg, Codegen.TEMPS[0]);
+        }
+    }
+
+    /**
+     * codeGenPush
+     * Generates code that pushes the value of this expression (e.g. as an
+     * argument), in whichever mode the compilation uses.
+     */
+    public void codeGenPush() {
+        if (CompilationContext.current().registers == 0) {
+            codeGen();
+            return;
+        }
+        codeGenReg(0);
+        Codegen.genPush(Codegen.TEMPS[0]);
+    }
+
+    /**
+     * genJump
+     * Generates code that branches to label if this (bool) expression is
+     * jumpIf, and otherwise falls through, in whichever mode the
+     * compilation uses. In register mode only TEMPS[k] and above may be
+     * changed. This version computes the value and tests it; conditions
+     * and && / || override it to branch without a 0/1 value.
+     */
+    public void genJump(String label, boolean jumpIf, int k) {
+        if (isConst()) {
+            if ((constValue() != 0) == jumpIf) {
+                Codegen.generate("j", label);
+            }
+            return;
+        }
+        String reg = Codegen.TEMPS[k];
+        if (CompilationContext.current().registers == 0) {
+            codeGen();
+            reg = Codegen.T0;
+            Codegen.genPop(reg);
+        } else {
+            codeGenReg(k);
+        }
+        Codegen.generate(jumpIf ? "bnez" : "beqz", reg, label);
+    }
+
+    /**
+     * lowerJump
+     * Appends IR that branches to label if this (bool) expression is
+     * jumpIf, and otherwise falls through.
+     */
+    public void lowerJump(IR ir, int label, boolean jumpIf) {
+        if (isConst()) {
+            if ((constValue() != 0) == jumpIf) {
+                ir.emit(IR.JUMP, -1, label, -1);
+            }
+            return;
+        }
+        ir.emit(jumpIf ? IR.BNEZ : IR.BEQZ, -1, lower(ir), label);
+    }
+
+    /**
+     * fold
+     * Constant-folds and simplifies the expressions below this one, then
+     * this one. Returns the expression to use in place of this one
+     * (possibly this one).
+     */
+    public ExpNode fold() {
+        return this;
+    }
+
+    /**
+     * inline
+     * Inlines the calls below this expression, then this one if it is a
+     * call (see Inliner). Returns the expression to use in place of this
+     * one (possibly this one).
+     */
+    public ExpNode inline(Inliner in) {
+        return this;
+    }
+
+    /**
+     * copy
+     * A copy of this expression with the callee's variables renamed, for
+     * inlining (see Inliner), or null if it cannot be copied.
+     */
+    public ExpNode copy(Inliner in) {
+        return null;
+    }
+
+    /**
+     * nodeCount
+     * The number of AST nodes in this expression (see
+     * StmtNode.nodeCount): this version is for leaves.
+     */
+    public int nodeCount() {
+        return 1;
+    }
+
+    /**
+     * level
+     * The outermost of the loops around this expression that it is
+     * invariant in (see LoopHoister.level), or h.depth() if it must stay
+     * where it is: this version is for literals, which are invariant
+     * everywhere, and expressions that are never moved.
+     */
+    public int level(LoopHoister h) {
+        return isConst() ? 0 : h.depth();
+    }
+
+    /**
+     * hoist
+     * Hoists the loop invariants below this expression, then this one:
+     * if it is an operator whose level (or LoopHoister.target of it) is
+     * below bound, it moves in front of the loop at that level (see
+     * LoopHoister.hoist). Parts of it that
+     * are invariant in loops further out go in front of those first.
+     * Returns the expression to use in place of this one (possibly this
+     * one).
+     */
+    public ExpNode hoist(LoopHoister h, int bound) {
+        return this;
+    }
+
+    /**
+     * valueKey
+     * The key of the value of this expression (see ValueNumbering), or
+     * null if it may not be reused: this version is for literals, and
+     * expressions that are never reused.
+     */
+    public String valueKey(ValueNumbering vn) {
+        return isConst() ? "c" + constValue() : null;
+    }
+
+    /**
+     * number
+     * Numbers the values this expression computes, in the order they are
+     * computed (see ValueNumbering). Returns the expression to use in
+     * place of this one (possibly this one): in the second pass, a value
+     * that is needed again is kept in a local, and one that was kept
+     * before is read from its local.
+     */
+    public ExpNode number(ValueNumbering vn) {
+        return this;
+    }
+
+    /**
+     * isConst
+     * Is this an int or bool literal? Its value is constValue().
+     */
+    public boolean isConst() {
+        return false;
+    }
+
+    /**
+     * constValue
+     * The value of a literal; true is 1 and false is 0.
+     */
+    public int constValue() {
+        return 0;
+    }
+
+    /**
+     * intLit, boolLit
+     * A literal with value v, at the position of this expression.
+     */
+    protected ExpNode intLit(int v) {
+        return new IntLitNode(lineNum(), charNum(), v);
+    }
+
+    protected ExpNode boolLit(boolean v) {
+        if (v) {
+            return new TrueNode(lineNum(), charNum());
+        }
+        return new FalseNode(lineNum(), charNum());
+    }
+
     abstract public Type typeCheck();
 
     abstract public int lineNum();
@@ -1702,6 +3557,31 @@ class IntLitNode extends ExpNode {
         Codegen.generate("li", Codegen.T0, myIntVal);
         Codegen.genPush(Codegen.T0);
     }
+
+    @Override
+    public void codeGenReg(int k) {
+        Codegen.generate("li", Codegen.TEMPS[k], myIntVal);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        return ir.compute(IR.LI, myIntVal, -1);
+    }
+
+    @Override
+    public boolean isConst() {
+        return true;
+    }
+
+    @Override
+    public int constValue() {
+        return myIntVal;
+    }
+
+    @Override
+    public ExpNode copy(Inliner in) {
+        return intLit(myIntVal);
+    }
 }
 
 class StringLitNode extends ExpNode {
@@ -1740,16 +3620,41 @@ class StringLitNode extends ExpNode {
     private int myCharNum;
     private String myStrVal;
 
+    /**
+     * nameAnalysis
+     * No names here, but this pass sees every literal in source order, so
+     * it interns them (see StringPool).
+     */
+    public void nameAnalysis(SymTable symTab) {
+        CompilationContext.current().strings.intern(myStrVal);
+    }
+
     @Override
     public void codeGen() {
-        String stringLabel = Codegen.nextLabel();
-        Codegen.generate(".data");
-        Codegen.genLabel(stringLabel);
-        Codegen.generate(".asciiz ", myStrVal);
-        Codegen.generate(".text");
-        Codegen.generate("la", Codegen.T0, stringLabel);
+        codeGenLabel(Codegen.T0);
         Codegen.genPush(Codegen.T0);
     }
+
+    @Override
+    public void codeGenReg(int k) {
+        codeGenLabel(Codegen.TEMPS[k]);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        return ir.compute(IR.LA, ir.string(myStrVal), -1);
+    }
+
+    @Override
+    public ExpNode copy(Inliner in) {
+        return new StringLitNode(myLineNum, myCharNum, myStrVal);
+    }
+
+    // load the address of the literal's pooled copy into reg
+    private void codeGenLabel(String reg) {
+        Codegen.generate("la", reg,
+                CompilationContext.current().strings.label(myStrVal));
+    }
 }
 
 class TrueNode extends ExpNode {
@@ -1791,6 +3696,31 @@ class TrueNode extends ExpNode {
         Codegen.generate("li", Codegen.T0, Codegen.TRUE);
         Codegen.genPush(Codegen.T0);
     }
+
+    @Override
+    public void codeGenReg(int k) {
+        Codegen.generate("li", Codegen.TEMPS[k], Codegen.TRUE);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        return ir.compute(IR.LI, 1, -1);
+    }
+
+    @Override
+    public boolean isConst() {
+        return true;
+    }
+
+    @Override
+    public int constValue() {
+        return 1;
+    }
+
+    @Override
+    public ExpNode copy(Inliner in) {
+        return boolLit(true);
+    }
 }
 
 class FalseNode extends ExpNode {
@@ -1832,6 +3762,31 @@ class FalseNode extends ExpNode {
         Codegen.generate("li", Codegen.T0, Codegen.FALSE);
         Codegen.genPush(Codegen.T0);
     }
+
+    @Override
+    public void codeGenReg(int k) {
+        Codegen.generate("li", Codegen.TEMPS[k], Codegen.FALSE);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        return ir.compute(IR.LI, 0, -1);
+    }
+
+    @Override
+    public boolean isConst() {
+        return true;
+    }
+
+    @Override
+    public int constValue() {
+        return 0;
+    }
+
+    @Override
+    public ExpNode copy(Inliner in) {
+        return boolLit(false);
+    }
 }
 
 class IdNode extends ExpNode {
@@ -1958,17 +3913,84 @@ class IdNode extends ExpNode {
     @Override
     public void codeGen() {
         // push value
-        Codegen.generate("lw", Codegen.T0, "_" + myStrVal);
+        genLoad(Codegen.T0);
         Codegen.genPush(Codegen.T0);
     }
 
-    public void codeGenAddr() {
-        Codegen.generate("la", Codegen.T0, "_" + myStrVal);
-        Codegen.genPush(Codegen.T0);
+    @Override
+    public void codeGenReg(int k) {
+        genLoad(Codegen.TEMPS[k]);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        if (mySym.isGlobal()) {
+            return ir.compute(IR.LDG, ir.symbol("_" + myStrVal), -1);
+        }
+        return ir.compute(IR.LDL, mySym.getOffset(), -1);
+    }
+
+    /**
+     * copy
+     * The same name, linked to the symbol in gives it (see
+     * Inliner.rename).
+     */
+    @Override
+    public IdNode copy(Inliner in) {
+        TSym sym = in.rename(mySym);
+        if (sym == null) {
+            return null;
+        }
+        IdNode copy = new IdNode(myLineNum, myCharNum, myStrVal);
+        copy.link(sym);
+        return copy;
     }
 
-    public void pushAddress() {
+    @Override
+    public int level(LoopHoister h) {
+        return h.level(mySym);
+    }
+
+    @Override
+    public String valueKey(ValueNumbering vn) {
+        return vn.key(mySym);
+    }
+
+    /**
+     * lowerStore
+     * Appends IR that stores virtual register v into this variable.
+     */
+    public void lowerStore(IR ir, int v) {
+        if (mySym.isGlobal()) {
+            ir.emit(IR.STG, -1, v, ir.symbol("_" + myStrVal));
+        } else {
+            ir.emit(IR.STL, -1, v, mySym.getOffset());
+        }
+    }
+
+    /**
+     * genLoad
+     * Load the value of this variable into reg: globals by label, locals and
+     * parameters relative to the frame pointer.
+     */
+    public void genLoad(String reg) {
+        if (mySym.isGlobal()) {
+            Codegen.generate("lw", reg, "_" + myStrVal);
+        } else {
+            Codegen.generateIndexed("lw", reg, Codegen.FP, mySym.getOffset());
+        }
+    }
 
+    /**
+     * genStore
+     * Store the value in reg into this variable.
+     */
+    public void genStore(String reg) {
+        if (mySym.isGlobal()) {
+            Codegen.generate("sw", reg, "_" + myStrVal);
+        } else {
+            Codegen.generateIndexed("sw", reg, Codegen.FP, mySym.getOffset());
+        }
     }
 }
 
@@ -2113,16 +4135,43 @@ class DotAccessExpNode extends ExpNode {
     private TSym mySym; // link to TSym for struct type
     private boolean badAccess; // to prevent multiple, cascading errors
 
+    // struct variables are not given storage, so a field access only
+    // reports an error and yields 0
+
     @Override
     public void codeGen() {
-        // Don't need this method.
+        unsupported(this);
+        Codegen.generate("li", Codegen.T0, 0);
+        Codegen.genPush(Codegen.T0);
     }
-}
 
-class AssignNode extends ExpNode {
-    public AssignNode(ExpNode lhs, ExpNode exp) {
-        myLhs = lhs;
-        myExp = exp;
+    @Override
+    public void codeGenReg(int k) {
+        unsupported(this);
+        Codegen.generate("li", Codegen.TEMPS[k], 0);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        unsupported(this);
+        return ir.compute(IR.LI, 0, -1);
+    }
+
+    /**
+     * unsupported
+     * Reports that code cannot be generated for the field access loc (read
+     * or assigned).
+     */
+    public static void unsupported(ExpNode loc) {
+        ErrMsg.fatal(loc.lineNum(), loc.charNum(),
+                "Struct field access is not supported in code generation");
+    }
+}
+
+class AssignNode extends ExpNode {
+    public AssignNode(ExpNode lhs, ExpNode exp) {
+        myLhs = lhs;
+        myExp = exp;
     }
 
     /**
@@ -2205,10 +4254,101 @@ class AssignNode extends ExpNode {
         myExp.codeGen();
 
         Codegen.genPop(Codegen.T0);
-        Codegen.genPop(Codegen.T1);
-        Codegen.generateIndexed("sw", Codegen.T0, Codegen.T1, 0);
+        genStore(Codegen.T0);
         Codegen.genPush(Codegen.T0);
     }
+
+    @Override
+    public void codeGenReg(int k) {
+        myExp.codeGenReg(k);
+        genStore(Codegen.TEMPS[k]);
+    }
+
+    // store the value in reg into the left-hand side
+    private void genStore(String reg) {
+        if (myLhs instanceof IdNode) {
+            ((IdNode) myLhs).genStore(reg);
+        } else {
+            DotAccessExpNode.unsupported(myLhs);
+        }
+    }
+
+    @Override
+    public int lower(IR ir) {
+        int v = myExp.lower(ir);
+        if (myLhs instanceof IdNode) {
+            ((IdNode) myLhs).lowerStore(ir, v);
+        } else {
+            DotAccessExpNode.unsupported(myLhs);
+        }
+        return v;
+    }
+
+    @Override
+    public ExpNode fold() {
+        myExp = myExp.fold();
+        return this;
+    }
+
+    @Override
+    public int regNeed() {
+        return myExp.regNeed();
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public void addCalls(Set<TSym> calls) {
+        myLhs.addCalls(calls);
+        myExp.addCalls(calls);
+    }
+
+    @Override
+    public void addAssigned(Set<TSym> assigned) {
+        if (myLhs instanceof IdNode) {
+            assigned.add(((IdNode) myLhs).sym());
+        }
+        myExp.addAssigned(assigned);
+    }
+
+    @Override
+    public AssignNode inline(Inliner in) {
+        myExp = myExp.inline(in);
+        return this;
+    }
+
+    @Override
+    public AssignNode hoist(LoopHoister h, int bound) {
+        myExp = myExp.hoist(h, bound);
+        return this;
+    }
+
+    @Override
+    public AssignNode number(ValueNumbering vn) {
+        myExp = myExp.number(vn);
+        if (myLhs instanceof IdNode) {
+            vn.assign(((IdNode) myLhs).sym());
+        }
+        return this;
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myLhs.nodeCount() + myExp.nodeCount();
+    }
+
+    @Override
+    public AssignNode copy(Inliner in) {
+        ExpNode lhs = myLhs.copy(in);
+        ExpNode exp = myExp.copy(in);
+        if (lhs == null || exp == null) {
+            return null;
+        }
+        return new AssignNode(lhs, exp);
+    }
 }
 
 class CallExpNode extends ExpNode {
@@ -2291,17 +4431,380 @@ class CallExpNode extends ExpNode {
 
     @Override
     public void codeGen() {
+        genCall();
+        if (!((FnSym)myId.sym()).getReturnType().isVoidType()) {
+            Codegen.genPush(Codegen.V0);
+        }
+    }
+
+    @Override
+    public void codeGenReg(int k) {
+        // the callee may change any temporary, so save the live ones
+        for (int i = 0; i < k; i++) {
+            Codegen.genPush(Codegen.TEMPS[i]);
+        }
+        genCall();
+        for (int i = k - 1; i >= 0; i--) {
+            Codegen.genPop(Codegen.TEMPS[i]);
+        }
+        Codegen.generate("move", Codegen.TEMPS[k], Codegen.V0);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public int lower(IR ir) {
+        return lowerCall(ir);
+    }
+
+    @Override
+    public ExpNode fold() {
+        myExpList.fold();
+        return this;
+    }
+
+    @Override
+    public void addCalls(Set<TSym> calls) {
+        calls.add(myId.sym());
+        myExpList.addCalls(calls);
+    }
+
+    @Override
+    public void addAssigned(Set<TSym> assigned) {
+        myExpList.addAssigned(assigned);
+    }
+
+    @Override
+    public ExpNode inline(Inliner in) {
+        myExpList.inline(in);
+        ExpNode body = in.expand(myId.sym(), myExpList);
+        return body == null ? this : body;
+    }
+
+    @Override
+    public CallExpNode hoist(LoopHoister h, int bound) {
+        myExpList.hoist(h, bound);
+        return this;
+    }
+
+    // the callee may assign any global
+    @Override
+    public CallExpNode number(ValueNumbering vn) {
+        myExpList.number(vn);
+        vn.call();
+        return this;
+    }
+
+    @Override
+    public int nodeCount() {
+        return 1 + myId.nodeCount() + myExpList.nodeCount();
+    }
+
+    @Override
+    public CallExpNode copy(Inliner in) {
+        IdNode id = myId.copy(in);
+        ExpListNode args = myExpList.copy(in);
+        if (id == null || args == null) {
+            return null;
+        }
+        return new CallExpNode(id, args);
+    }
+
+    /**
+     * lowerCall
+     * Appends the IR for this call and returns the virtual register that
+     * receives the return value, or -1 for a void function.
+     */
+    public int lowerCall(IR ir) {
+        myExpList.lower(ir);
+        int d = -1;
+        if (!((FnSym)myId.sym()).getReturnType().isVoidType()) {
+            d = ir.newReg();
+        }
+        ir.emit(IR.CALL, d, ir.symbol(label()), -1);
+        return d;
+    }
+
+    /**
+     * lowerTailCall
+     * Appends the IR for this call as the last thing the function does.
+     */
+    public void lowerTailCall(IR ir) {
+        myExpList.lower(ir);
+        ir.emit(IR.TAILCALL, -1, ir.symbol(label()), myId.paramSize());
+    }
+
+    /**
+     * genCall
+     * Push the arguments (the callee pops them again) and jump to the
+     * function. Its return value, if any, is left in V0.
+     */
+    public void genCall() {
         myExpList.codeGen();
-        if (myId.isMain()) {
-            Codegen.generate("jal", "main");
+        Codegen.generate("jal", label());
+    }
+
+    /**
+     * genTailCall
+     * Push the arguments, then replace the current function's frame by
+     * the callee's and jump to it (see Codegen.genTailCall); it returns
+     * to the current function's caller, with its return value in V0.
+     */
+    public void genTailCall() {
+        myExpList.codeGen();
+        CompilationContext ctx = CompilationContext.current();
+        Codegen.genTailCall(label(), myId.paramSize(), ctx.fnParamSize,
+                            ctx.fnLeaf, false);
+    }
+
+    // the callee's label
+    private String label() {
+        return myId.isMain() ? "main" : "_" + myId.name();
+    }
+}
+
+class InlineExpNode extends ExpNode {
+    /**
+     * The body of a function in place of a call to it (see Inliner):
+     * bindings assign the arguments to the callee's parameters, now locals
+     * of the caller, then body runs, then result (null for a void
+     * function) is the value.
+     */
+    public InlineExpNode(List<AssignNode> bindings, StmtListNode body,
+                         ExpNode result) {
+        myBindings = bindings;
+        myBody = body;
+        myResult = result;
+    }
+
+    public ExpNode result() {
+        return myResult;
+    }
+
+    public int lineNum() {
+        return myResult == null ? 0 : myResult.lineNum();
+    }
+
+    public int charNum() {
+        return myResult == null ? 0 : myResult.charNum();
+    }
+
+    public Type typeCheck() {
+        return myResult == null ? new VoidType() : myResult.typeCheck();
+    }
+
+    public void unparse(PrintWriter p, int indent) {
+        p.println("({");
+        for (AssignNode node : myBindings) {
+            addIndentation(p, indent + 4);
+            node.unparse(p, -1);
+            p.println(";");
+        }
+        myBody.unparse(p, indent + 4);
+        if (myResult != null) {
+            addIndentation(p, indent + 4);
+            myResult.unparse(p, 0);
+            p.println();
+        }
+        addIndentation(p, indent);
+        p.print("})");
+    }
+
+    // 3 kids
+    private List<AssignNode> myBindings;
+    private StmtListNode myBody;
+    private ExpNode myResult; // possibly null
+
+    @Override
+    public void codeGen() {
+        for (AssignNode node : myBindings) {
+            node.codeGenInto(Codegen.T0);
+        }
+        myBody.codeGen(null);
+        myResult.codeGen();
+    }
+
+    @Override
+    public void codeGenReg(int k) {
+        codeGenBody(k);
+        myResult.codeGenReg(k);
+    }
+
+    @Override
+    public void genJump(String label, boolean jumpIf, int k) {
+        if (CompilationContext.current().registers == 0) {
+            for (AssignNode node : myBindings) {
+                node.codeGenInto(Codegen.T0);
+            }
+            myBody.codeGen(null);
         } else {
-            Codegen.generate("jal", "_"+this.myId.name());
+            codeGenBody(k);
         }
-        Codegen.generate("add", Codegen.SP, myId.paramSize());
-        if (!((FnSym)myId.sym()).getReturnType().isVoidType()) {
-            Codegen.genPush(Codegen.V0);
+        myResult.genJump(label, jumpIf, k);
+    }
+
+    /**
+     * codeGenBody
+     * Register mode: the bindings, using TEMPS[k] and above, then the
+     * statements, which may use any temporary, so the live ones are saved
+     * around them.
+     */
+    private void codeGenBody(int k) {
+        for (AssignNode node : myBindings) {
+            node.codeGenReg(k);
+        }
+        if (myBody.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < k; i++) {
+            Codegen.genPush(Codegen.TEMPS[i]);
+        }
+        myBody.codeGen(null);
+        for (int i = k - 1; i >= 0; i--) {
+            Codegen.genPop(Codegen.TEMPS[i]);
         }
     }
+
+    @Override
+    public int lower(IR ir) {
+        lowerBody(ir);
+        return myResult.lower(ir);
+    }
+
+    @Override
+    public void lowerJump(IR ir, int label, boolean jumpIf) {
+        lowerBody(ir);
+        myResult.lowerJump(ir, label, jumpIf);
+    }
+
+    private void lowerBody(IR ir) {
+        for (AssignNode node : myBindings) {
+            node.lower(ir);
+        }
+        myBody.lower(ir);
+    }
+
+    /**
+     * appendTo
+     * Appends the statements that do what this call statement did: the
+     * bindings, the body, and the result if it has side effects (assigned
+     * to a new local of the caller, or called as a statement).
+     */
+    public void appendTo(List<StmtNode> stmts, Inliner in) {
+        for (AssignNode node : myBindings) {
+            stmts.add(new AssignStmtNode(node));
+        }
+        myBody.appendTo(stmts);
+        if (myResult instanceof CallExpNode) {
+            stmts.add(new CallStmtNode((CallExpNode) myResult));
+        } else if (myResult != null && myResult.hasSideEffects()) {
+            stmts.add(new AssignStmtNode(
+                    new AssignNode(in.temp(myResult.typeCheck()), myResult)));
+        }
+    }
+
+    @Override
+    public int regNeed() {
+        int need = myResult.regNeed();
+        for (AssignNode node : myBindings) {
+            need = Math.max(need, node.regNeed());
+        }
+        return need;
+    }
+
+    // the bindings store into the caller's frame
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public void addCalls(Set<TSym> calls) {
+        for (AssignNode node : myBindings) {
+            node.addCalls(calls);
+        }
+        myBody.addCalls(calls);
+        if (myResult != null) {
+            myResult.addCalls(calls);
+        }
+    }
+
+    @Override
+    public void addAssigned(Set<TSym> assigned) {
+        for (AssignNode node : myBindings) {
+            node.addAssigned(assigned);
+        }
+        myBody.addAssigned(assigned);
+        if (myResult != null) {
+            myResult.addAssigned(assigned);
+        }
+    }
+
+    @Override
+    public ExpNode hoist(LoopHoister h, int bound) {
+        for (AssignNode node : myBindings) {
+            node.hoist(h, bound);
+        }
+        myBody.hoist(h);
+        if (myResult != null) {
+            myResult = myResult.hoist(h, bound);
+        }
+        return this;
+    }
+
+    @Override
+    public ExpNode number(ValueNumbering vn) {
+        vn.skip(this);
+        return this;
+    }
+
+    /**
+     * fold
+     * Folds the parts; a call that is left with nothing but its result is
+     * replaced by the result.
+     */
+    @Override
+    public ExpNode fold() {
+        for (AssignNode node : myBindings) {
+            node.fold();
+        }
+        myBody.fold();
+        myResult = myResult.fold();
+        if (myBindings.isEmpty() && myBody.isEmpty()) {
+            return myResult;
+        }
+        return this;
+    }
+
+    @Override
+    public int nodeCount() {
+        int count = 1 + myBody.nodeCount();
+        for (AssignNode node : myBindings) {
+            count += node.nodeCount();
+        }
+        return myResult == null ? count : count + myResult.nodeCount();
+    }
+
+    @Override
+    public InlineExpNode copy(Inliner in) {
+        List<AssignNode> bindings = new ArrayList<AssignNode>();
+        for (AssignNode node : myBindings) {
+            AssignNode copy = node.copy(in);
+            if (copy == null) {
+                return null;
+            }
+            bindings.add(copy);
+        }
+        StmtListNode body = myBody.copy(in);
+        ExpNode result = myResult.copy(in);
+        if (body == null || result == null) {
+            return null;
+        }
+        return new InlineExpNode(bindings, body, result);
+    }
 }
 
 abstract class UnaryExpNode extends ExpNode {
@@ -2333,6 +4836,69 @@ abstract class UnaryExpNode extends ExpNode {
         myExp.nameAnalysis(symTab);
     }
 
+    public int regNeed() {
+        return myExp.regNeed();
+    }
+
+    public boolean hasSideEffects() {
+        return myExp.hasSideEffects();
+    }
+
+    public boolean mayTrap() {
+        return myExp.mayTrap();
+    }
+
+    public void addCalls(Set<TSym> calls) {
+        myExp.addCalls(calls);
+    }
+
+    public ExpNode inline(Inliner in) {
+        myExp = myExp.inline(in);
+        return this;
+    }
+
+    public int nodeCount() {
+        return 1 + myExp.nodeCount();
+    }
+
+    public void addAssigned(Set<TSym> assigned) {
+        myExp.addAssigned(assigned);
+    }
+
+    public int level(LoopHoister h) {
+        return myExp.level(h);
+    }
+
+    public ExpNode hoist(LoopHoister h, int bound) {
+        int level = h.target(level(h));
+        myExp = myExp.hoist(h, Math.min(level, bound));
+        return level < bound ? h.hoist(this, level) : this;
+    }
+
+    /**
+     * irOpcode
+     * The IR instruction (op dest, operand) that computes this operator.
+     */
+    abstract protected int irOpcode();
+
+    public String valueKey(ValueNumbering vn) {
+        String key = myExp.valueKey(vn);
+        if (key == null) {
+            return null;
+        }
+        return "(" + IR.OP_NAMES[irOpcode()] + " " + key + ")";
+    }
+
+    public ExpNode number(ValueNumbering vn) {
+        String key = valueKey(vn);
+        ExpNode exp = vn.reuse(key, this);
+        if (exp != null) {
+            return exp;
+        }
+        myExp = myExp.number(vn);
+        return vn.define(key, this);
+    }
+
     // one child
     protected ExpNode myExp;
 }
@@ -2351,22 +4917,310 @@ abstract class BinaryExpNode extends ExpNode {
         return myExp1.lineNum();
     }
 
-    /**
-     * Return the char number for this binary expression node.
-     * The char number is the one corresponding to the left operand.
-     */
-    public int charNum() {
-        return myExp1.charNum();
+    /**
+     * Return the char number for this binary expression node.
+     * The char number is the one corresponding to the left operand.
+     */
+    public int charNum() {
+        return myExp1.charNum();
+    }
+
+    /**
+     * nameAnalysis
+     * Given a symbol table symTab, perform name analysis on this node's
+     * two children
+     */
+    public void nameAnalysis(SymTable symTab) {
+        myExp1.nameAnalysis(symTab);
+        myExp2.nameAnalysis(symTab);
+    }
+
+    /**
+     * irOpcode
+     * The IR instruction (op dest, left, right) that computes this
+     * operator.
+     */
+    abstract protected int irOpcode();
+
+    /**
+     * opcode
+     * The MIPS instruction (op dest, left, right) that computes this
+     * operator.
+     */
+    protected String opcode() {
+        return IR.OP_NAMES[irOpcode()];
+    }
+
+    public void codeGen() {
+        myExp1.codeGen();
+        myExp2.codeGen();
+
+        Codegen.genPop(Codegen.T1);
+        Codegen.genPop(Codegen.T0);
+        Codegen.generate(opcode(), Codegen.T0, Codegen.T0, Codegen.T1);
+        Codegen.genPush(Codegen.T0);
+    }
+
+    /**
+     * codeGenReg
+     * Sethi-Ullman: evaluate the operand that needs more registers first
+     * (unless either operand has side effects, which pins the order to left
+     * to right), keeping its value in TEMPS[k] while the other one is
+     * computed in TEMPS[k+1]. If neither order fits in the temporaries
+     * that are left, the left value waits on the stack instead.
+     */
+    public void codeGenReg(int k) {
+        String left = codeGenOperands(k);
+        String dest = Codegen.TEMPS[k];
+        Codegen.generate(opcode(), dest, left, rightOperand(left, k));
+    }
+
+    /**
+     * codeGenOperands
+     * Register mode: evaluates both operands, using TEMPS[k] and above,
+     * and returns the register that holds the left one (see rightOperand
+     * for the right one).
+     */
+    protected String codeGenOperands(int k) {
+        int avail = CompilationContext.current().registers - k;
+        int need1 = myExp1.regNeed();
+        int need2 = myExp2.regNeed();
+
+        if (avail >= 2 && need2 < avail && (need1 >= need2 || need1 >= avail
+                                            || hasSideEffects())) {
+            myExp1.codeGenReg(k);
+            myExp2.codeGenReg(k + 1);
+            return Codegen.TEMPS[k];
+        } else if (avail >= 2 && need1 < avail && !hasSideEffects()) {
+            myExp2.codeGenReg(k);
+            myExp1.codeGenReg(k + 1);
+            return Codegen.TEMPS[k + 1];
+        } else {
+            // spill
+            myExp1.codeGenReg(k);
+            Codegen.genPush(Codegen.TEMPS[k]);
+            myExp2.codeGenReg(k);
+            Codegen.genPop(Codegen.V1);
+            return Codegen.V1;
+        }
+    }
+
+    /**
+     * rightOperand
+     * The register codeGenOperands(k) left the right operand in, given
+     * the one it returned for the left operand.
+     */
+    protected static String rightOperand(String left, int k) {
+        return left.equals(Codegen.TEMPS[k]) ? Codegen.TEMPS[k + 1]
+                                             : Codegen.TEMPS[k];
+    }
+
+    public int lower(IR ir) {
+        int left = myExp1.lower(ir);
+        int right = myExp2.lower(ir);
+        return ir.compute(irOpcode(), left, right);
+    }
+
+    /**
+     * genJump
+     * A comparison branches on its operands directly (blt, bne, ...)
+     * instead of computing 0 or 1 first.
+     */
+    public void genJump(String label, boolean jumpIf, int k) {
+        if (!IR.isCompare(irOpcode())) {
+            super.genJump(label, jumpIf, k);
+            return;
+        }
+        String branch = IR.OP_NAMES[IR.branch(irOpcode(), jumpIf)];
+        if (CompilationContext.current().registers == 0) {
+            myExp1.codeGen();
+            myExp2.codeGen();
+            Codegen.genPop(Codegen.T1);
+            Codegen.genPop(Codegen.T0);
+            Codegen.generate(branch, Codegen.T0, Codegen.T1, label);
+            return;
+        }
+        String left = codeGenOperands(k);
+        Codegen.generate(branch, left, rightOperand(left, k), label);
+    }
+
+    public void lowerJump(IR ir, int label, boolean jumpIf) {
+        if (!IR.isCompare(irOpcode())) {
+            super.lowerJump(ir, label, jumpIf);
+            return;
+        }
+        int left = myExp1.lower(ir);
+        int right = myExp2.lower(ir);
+        ir.emit(IR.branch(irOpcode(), jumpIf), label, left, right);
+    }
+
+    /**
+     * fold
+     * Folds both operands; if they are both literals the operator is
+     * applied now (except for a division that would trap), otherwise
+     * simplify() gets a chance to apply an identity.
+     */
+    public ExpNode fold() {
+        myExp1 = myExp1.fold();
+        myExp2 = myExp2.fold();
+        if (!myExp1.isConst() || !myExp2.isConst()) {
+            return simplify();
+        }
+        int x = myExp1.constValue();
+        int y = myExp2.constValue();
+        switch (irOpcode()) {
+        case IR.ADD:
+            return intLit(x + y);
+        case IR.SUB:
+            return intLit(x - y);
+        case IR.MUL:
+            return intLit(x * y);
+        case IR.DIV:
+            if (y == 0 || (x == Integer.MIN_VALUE && y == -1)) {
+                return this;
+            }
+            return intLit(x / y);
+        case IR.AND:
+            return boolLit((x & y) != 0);
+        case IR.OR:
+            return boolLit((x | y) != 0);
+        case IR.SEQ:
+            return boolLit(x == y);
+        case IR.SNE:
+            return boolLit(x != y);
+        case IR.SLT:
+            return boolLit(x < y);
+        case IR.SGT:
+            return boolLit(x > y);
+        case IR.SLE:
+            return boolLit(x <= y);
+        case IR.SGE:
+            return boolLit(x >= y);
+        default:
+            return this;
+        }
+    }
+
+    /**
+     * simplify
+     * Called by fold when the operands are not both literals: returns an
+     * equivalent, simpler expression, or this one.
+     */
+    protected ExpNode simplify() {
+        return this;
+    }
+
+    /**
+     * isLit
+     * Is e a literal with value v?
+     */
+    protected static boolean isLit(ExpNode e, int v) {
+        return e.isConst() && e.constValue() == v;
+    }
+
+    public int regNeed() {
+        int need1 = myExp1.regNeed();
+        int need2 = myExp2.regNeed();
+        return need1 == need2 ? need1 + 1 : Math.max(need1, need2);
+    }
+
+    public boolean hasSideEffects() {
+        return myExp1.hasSideEffects() || myExp2.hasSideEffects();
+    }
+
+    public boolean mayTrap() {
+        return myExp1.mayTrap() || myExp2.mayTrap();
+    }
+
+    public void addCalls(Set<TSym> calls) {
+        myExp1.addCalls(calls);
+        myExp2.addCalls(calls);
+    }
+
+    public ExpNode inline(Inliner in) {
+        myExp1 = myExp1.inline(in);
+        myExp2 = myExp2.inline(in);
+        return this;
+    }
+
+    public void addAssigned(Set<TSym> assigned) {
+        myExp1.addAssigned(assigned);
+        myExp2.addAssigned(assigned);
+    }
+
+    public int level(LoopHoister h) {
+        return Math.max(myExp1.level(h), myExp2.level(h));
+    }
+
+    public ExpNode hoist(LoopHoister h, int bound) {
+        int level = h.target(level(h));
+        myExp1 = myExp1.hoist(h, Math.min(level, bound));
+        myExp2 = myExp2.hoist(h, Math.min(level, bound));
+        return level < bound ? h.hoist(this, level) : this;
+    }
+
+    public String valueKey(ValueNumbering vn) {
+        return ValueNumbering.key(irOpcode(), myExp1.valueKey(vn),
+                                  myExp2.valueKey(vn));
+    }
+
+    public ExpNode number(ValueNumbering vn) {
+        String key = valueKey(vn);
+        ExpNode exp = vn.reuse(key, this);
+        if (exp != null) {
+            return exp;
+        }
+        myExp1 = myExp1.number(vn);
+        myExp2 = myExp2.number(vn);
+        return vn.define(key, this);
+    }
+
+    public int nodeCount() {
+        return 1 + myExp1.nodeCount() + myExp2.nodeCount();
+    }
+
+    public ExpNode copy(Inliner in) {
+        ExpNode exp1 = myExp1.copy(in);
+        ExpNode exp2 = myExp2.copy(in);
+        if (exp1 == null || exp2 == null) {
+            return null;
+        }
+        return make(irOpcode(), exp1, exp2);
     }
 
     /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's
-     * two children
+     * make
+     * A new node for the operator whose irOpcode() is op.
      */
-    public void nameAnalysis(SymTable symTab) {
-        myExp1.nameAnalysis(symTab);
-        myExp2.nameAnalysis(symTab);
+    protected static BinaryExpNode make(int op, ExpNode exp1, ExpNode exp2) {
+        switch (op) {
+        case IR.ADD:
+            return new PlusNode(exp1, exp2);
+        case IR.SUB:
+            return new MinusNode(exp1, exp2);
+        case IR.MUL:
+            return new TimesNode(exp1, exp2);
+        case IR.DIV:
+            return new DivideNode(exp1, exp2);
+        case IR.AND:
+            return new AndNode(exp1, exp2);
+        case IR.OR:
+            return new OrNode(exp1, exp2);
+        case IR.SEQ:
+            return new EqualsNode(exp1, exp2);
+        case IR.SNE:
+            return new NotEqualsNode(exp1, exp2);
+        case IR.SLT:
+            return new LessNode(exp1, exp2);
+        case IR.SGT:
+            return new GreaterNode(exp1, exp2);
+        case IR.SLE:
+            return new LessEqNode(exp1, exp2);
+        case IR.SGE:
+            return new GreaterEqNode(exp1, exp2);
+        default:
+            throw new IllegalArgumentException("no operator " + IR.OP_NAMES[op]);
+        }
     }
 
     // two kids
@@ -2414,9 +5268,43 @@ class UnaryMinusNode extends UnaryExpNode {
         myExp.codeGen();
 
         Codegen.genPop(Codegen.T0);
-        Codegen.generate("mul", Codegen.T0, Codegen.T0, -1);
+        Codegen.generate("neg", Codegen.T0, Codegen.T0);
         Codegen.genPush(Codegen.T0);
     }
+
+    @Override
+    public void codeGenReg(int k) {
+        myExp.codeGenReg(k);
+        Codegen.generate("neg", Codegen.TEMPS[k], Codegen.TEMPS[k]);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        return ir.compute(IR.NEG, myExp.lower(ir), -1);
+    }
+
+    @Override
+    protected int irOpcode() {
+        return IR.NEG;
+    }
+
+    @Override
+    public ExpNode fold() {
+        myExp = myExp.fold();
+        if (myExp.isConst()) {
+            return intLit(-myExp.constValue());
+        }
+        if (myExp instanceof UnaryMinusNode) {
+            return ((UnaryMinusNode) myExp).myExp;
+        }
+        return this;
+    }
+
+    @Override
+    public ExpNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        return exp == null ? null : new UnaryMinusNode(exp);
+    }
 }
 
 class NotNode extends UnaryExpNode {
@@ -2455,9 +5343,53 @@ class NotNode extends UnaryExpNode {
         myExp.codeGen();
 
         Codegen.genPop(Codegen.T0);
-        Codegen.generate("not", Codegen.T0, Codegen.T0);
+        Codegen.generate("xori", Codegen.T0, Codegen.T0, 1);
         Codegen.genPush(Codegen.T0);
     }
+
+    @Override
+    public void codeGenReg(int k) {
+        myExp.codeGenReg(k);
+        Codegen.generate("xori", Codegen.TEMPS[k], Codegen.TEMPS[k], 1);
+    }
+
+    @Override
+    public int lower(IR ir) {
+        return ir.compute(IR.NOT, myExp.lower(ir), -1);
+    }
+
+    @Override
+    protected int irOpcode() {
+        return IR.NOT;
+    }
+
+    @Override
+    public void genJump(String label, boolean jumpIf, int k) {
+        myExp.genJump(label, !jumpIf, k);
+    }
+
+    @Override
+    public void lowerJump(IR ir, int label, boolean jumpIf) {
+        myExp.lowerJump(ir, label, !jumpIf);
+    }
+
+    @Override
+    public ExpNode fold() {
+        myExp = myExp.fold();
+        if (myExp.isConst()) {
+            return boolLit(myExp.constValue() == 0);
+        }
+        if (myExp instanceof NotNode) {
+            return ((NotNode) myExp).myExp;
+        }
+        return this;
+    }
+
+    @Override
+    public ExpNode copy(Inliner in) {
+        ExpNode exp = myExp.copy(in);
+        return exp == null ? null : new NotNode(exp);
+    }
 }
 
 // **********************************************************************
@@ -2495,6 +5427,68 @@ abstract class ArithmeticExpNode extends BinaryExpNode {
 
         return retType;
     }
+
+    /**
+     * reduced
+     * Strength reduction: the operand to compute this from by
+     * genReduced, without a mul or div, when the other one is a suitable
+     * literal; otherwise null.
+     */
+    protected ExpNode reduced() {
+        return null;
+    }
+
+    /**
+     * genReduced
+     * Given reduced() in register src, computes this into dest, using
+     * scratch (see Codegen.genMulConst, Codegen.genDivConst).
+     */
+    protected void genReduced(String dest, String src, String scratch) {
+    }
+
+    /**
+     * reducedConst
+     * The literal operand, when reduced() is not null.
+     */
+    protected int reducedConst() {
+        return (reduced() == myExp1 ? myExp2 : myExp1).constValue();
+    }
+
+    public void codeGen() {
+        ExpNode exp = reduced();
+        if (exp == null) {
+            super.codeGen();
+            return;
+        }
+        exp.codeGen();
+        Codegen.genPop(Codegen.T0);
+        genReduced(Codegen.T0, Codegen.T0, Codegen.T1);
+        Codegen.genPush(Codegen.T0);
+    }
+
+    public void codeGenReg(int k) {
+        ExpNode exp = reduced();
+        if (exp == null) {
+            super.codeGenReg(k);
+            return;
+        }
+        exp.codeGenReg(k);
+        genReduced(Codegen.TEMPS[k], Codegen.TEMPS[k], Codegen.V1);
+    }
+
+    public int lower(IR ir) {
+        ExpNode exp = reduced();
+        if (exp == null) {
+            return super.lower(ir);
+        }
+        int op = irOpcode() == IR.MUL ? IR.MULI : IR.DIVI;
+        return ir.compute(op, exp.lower(ir), reducedConst());
+    }
+
+    public int regNeed() {
+        ExpNode exp = reduced();
+        return exp == null ? super.regNeed() : exp.regNeed();
+    }
 }
 
 abstract class LogicalExpNode extends BinaryExpNode {
@@ -2528,6 +5522,95 @@ abstract class LogicalExpNode extends BinaryExpNode {
 
         return retType;
     }
+
+    /**
+     * shortCircuit
+     * The value of the left operand that decides the result by itself
+     * (false for &&, true for ||); the right operand is then not
+     * evaluated.
+     */
+    abstract protected boolean shortCircuit();
+
+    // the right operand may not be evaluated, so its values are not kept
+    public ExpNode number(ValueNumbering vn) {
+        String key = valueKey(vn);
+        ExpNode exp = vn.reuse(key, this);
+        if (exp != null) {
+            return exp;
+        }
+        myExp1 = myExp1.number(vn);
+        vn.skip(myExp2);
+        return vn.define(key, this);
+    }
+
+    /**
+     * codeGen
+     * Leaves the left value on the stack if it decides the result;
+     * otherwise pops it and pushes the right value.
+     */
+    public void codeGen() {
+        String done = Codegen.nextLabel();
+        myExp1.codeGen();
+        Codegen.generateIndexed("lw", Codegen.T0, Codegen.SP, 4);
+        Codegen.generate(shortCircuit() ? "bnez" : "beqz", Codegen.T0, done);
+        Codegen.generate("addu", Codegen.SP, Codegen.SP, 4);
+        myExp2.codeGen();
+        Codegen.genLabel(done);
+    }
+
+    public void codeGenReg(int k) {
+        String done = Codegen.nextLabel();
+        myExp1.codeGenReg(k);
+        Codegen.generate(shortCircuit() ? "bnez" : "beqz", Codegen.TEMPS[k],
+                         done);
+        myExp2.codeGenReg(k);
+        Codegen.genLabel(done);
+    }
+
+    public int lower(IR ir) {
+        int d = ir.newReg();
+        int done = ir.newLabel();
+        ir.emit(IR.MOVE, d, myExp1.lower(ir), -1);
+        ir.emit(shortCircuit() ? IR.BNEZ : IR.BEQZ, -1, d, done);
+        ir.emit(IR.MOVE, d, myExp2.lower(ir), -1);
+        ir.emit(IR.LABEL, -1, done, -1);
+        return d;
+    }
+
+    /**
+     * genJump
+     * If the left operand deciding the result means taking the branch,
+     * both operands branch to label; otherwise the left one branches
+     * around the right one, which alone decides whether to take it.
+     */
+    public void genJump(String label, boolean jumpIf, int k) {
+        if (jumpIf == shortCircuit()) {
+            myExp1.genJump(label, jumpIf, k);
+            myExp2.genJump(label, jumpIf, k);
+            return;
+        }
+        String skip = Codegen.nextLabel();
+        myExp1.genJump(skip, shortCircuit(), k);
+        myExp2.genJump(label, jumpIf, k);
+        Codegen.genLabel(skip);
+    }
+
+    public void lowerJump(IR ir, int label, boolean jumpIf) {
+        if (jumpIf == shortCircuit()) {
+            myExp1.lowerJump(ir, label, jumpIf);
+            myExp2.lowerJump(ir, label, jumpIf);
+            return;
+        }
+        int skip = ir.newLabel();
+        myExp1.lowerJump(ir, skip, shortCircuit());
+        myExp2.lowerJump(ir, label, jumpIf);
+        ir.emit(IR.LABEL, -1, skip, -1);
+    }
+
+    // both operands are evaluated into the same register
+    public int regNeed() {
+        return Math.max(myExp1.regNeed(), myExp2.regNeed());
+    }
 }
 
 abstract class EqualityExpNode extends BinaryExpNode {
@@ -2627,17 +5710,21 @@ class PlusNode extends ArithmeticExpNode {
         p.print(")");
     }
 
+    // x + 0, 0 + x
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
-
-        Codegen.generate("add", Codegen.T0, Codegen.T0, Codegen.T1);
+    protected ExpNode simplify() {
+        if (isLit(myExp2, 0)) {
+            return myExp1;
+        }
+        if (isLit(myExp1, 0)) {
+            return myExp2;
+        }
+        return this;
+    }
 
-        Codegen.genPush(Codegen.T0);
+    @Override
+    protected int irOpcode() {
+        return IR.ADD;
     }
 }
 
@@ -2654,17 +5741,18 @@ class MinusNode extends ArithmeticExpNode {
         p.print(")");
     }
 
+    // x - 0
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
-
-        Codegen.generate("sub", Codegen.T0, Codegen.T0, Codegen.T1);
+    protected ExpNode simplify() {
+        if (isLit(myExp2, 0)) {
+            return myExp1;
+        }
+        return this;
+    }
 
-        Codegen.genPush(Codegen.T0);
+    @Override
+    protected int irOpcode() {
+        return IR.SUB;
     }
 }
 
@@ -2681,17 +5769,47 @@ class TimesNode extends ArithmeticExpNode {
         p.print(")");
     }
 
+    // x * 1, 1 * x, and x * 0, 0 * x when x has no side effects and
+    // cannot trap
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
+    protected ExpNode simplify() {
+        if (isLit(myExp2, 1)) {
+            return myExp1;
+        }
+        if (isLit(myExp1, 1)) {
+            return myExp2;
+        }
+        if (isLit(myExp2, 0) && !myExp1.hasSideEffects()
+            && !myExp1.mayTrap()) {
+            return myExp2;
+        }
+        if (isLit(myExp1, 0) && !myExp2.hasSideEffects()
+            && !myExp2.mayTrap()) {
+            return myExp1;
+        }
+        return this;
+    }
 
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
+    @Override
+    protected int irOpcode() {
+        return IR.MUL;
+    }
 
-        Codegen.generate("mult", Codegen.T0, Codegen.T0, Codegen.T1);
+    // x * c or c * x, for c a sum or difference of two powers of two
+    @Override
+    protected ExpNode reduced() {
+        if (myExp2.isConst() && Codegen.isShiftAdd(myExp2.constValue())) {
+            return myExp1;
+        }
+        if (myExp1.isConst() && Codegen.isShiftAdd(myExp1.constValue())) {
+            return myExp2;
+        }
+        return null;
+    }
 
-        Codegen.genPush(Codegen.T0);
+    @Override
+    protected void genReduced(String dest, String src, String scratch) {
+        Codegen.genMulConst(dest, src, reducedConst(), scratch);
     }
 }
 
@@ -2708,17 +5826,48 @@ class DivideNode extends ArithmeticExpNode {
         p.print(")");
     }
 
+    // x / 1
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
+    protected ExpNode simplify() {
+        if (isLit(myExp2, 1)) {
+            return myExp1;
+        }
+        return this;
+    }
 
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
+    @Override
+    protected int irOpcode() {
+        return IR.DIV;
+    }
 
-        Codegen.generate("div", Codegen.T0, Codegen.T0, Codegen.T1);
+    // anything but a non-zero constant divisor might be zero
+    @Override
+    public boolean mayTrap() {
+        return !(myExp2.isConst() && myExp2.constValue() != 0)
+            || super.mayTrap();
+    }
 
-        Codegen.genPush(Codegen.T0);
+    // a division that might trap stays in the loop
+    @Override
+    public int level(LoopHoister h) {
+        if (myExp2.isConst() && myExp2.constValue() != 0) {
+            return super.level(h);
+        }
+        return h.depth();
+    }
+
+    // x / c for any c but 0, which is left to div
+    @Override
+    protected ExpNode reduced() {
+        if (myExp2.isConst() && myExp2.constValue() != 0) {
+            return myExp1;
+        }
+        return null;
+    }
+
+    @Override
+    protected void genReduced(String dest, String src, String scratch) {
+        Codegen.genDivConst(dest, src, reducedConst(), scratch);
     }
 }
 
@@ -2735,15 +5884,35 @@ class AndNode extends LogicalExpNode {
         p.print(")");
     }
 
+    // b && true, true && b, and b && false, false && b when b has no
+    // side effects and cannot trap
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
+    protected ExpNode simplify() {
+        if (isLit(myExp2, 1)) {
+            return myExp1;
+        }
+        if (isLit(myExp1, 1)) {
+            return myExp2;
+        }
+        if (isLit(myExp2, 0) && !myExp1.hasSideEffects()
+            && !myExp1.mayTrap()) {
+            return myExp2;
+        }
+        if (isLit(myExp1, 0) && !myExp2.hasSideEffects()
+            && !myExp2.mayTrap()) {
+            return myExp1;
+        }
+        return this;
+    }
 
-        Codegen.genPop(Codegen.T0);
-        Codegen.genPop(Codegen.T1);
-        Codegen.generate("and", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(Codegen.T0);
+    @Override
+    protected int irOpcode() {
+        return IR.AND;
+    }
+
+    @Override
+    protected boolean shortCircuit() {
+        return false;
     }
 }
 
@@ -2760,15 +5929,35 @@ class OrNode extends LogicalExpNode {
         p.print(")");
     }
 
+    // b || false, false || b, and b || true, true || b when b has no
+    // side effects and cannot trap
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
+    protected ExpNode simplify() {
+        if (isLit(myExp2, 0)) {
+            return myExp1;
+        }
+        if (isLit(myExp1, 0)) {
+            return myExp2;
+        }
+        if (isLit(myExp2, 1) && !myExp1.hasSideEffects()
+            && !myExp1.mayTrap()) {
+            return myExp2;
+        }
+        if (isLit(myExp1, 1) && !myExp2.hasSideEffects()
+            && !myExp2.mayTrap()) {
+            return myExp1;
+        }
+        return this;
+    }
 
-        Codegen.genPop(Codegen.T0);
-        Codegen.genPop(Codegen.T1);
-        Codegen.generate("or", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(Codegen.T0);
+    @Override
+    protected int irOpcode() {
+        return IR.OR;
+    }
+
+    @Override
+    protected boolean shortCircuit() {
+        return true;
     }
 }
 
@@ -2786,16 +5975,8 @@ class EqualsNode extends EqualityExpNode {
     }
 
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T0);
-        Codegen.genPop(Codegen.T1);
-
-        Codegen.generate("seq", Codegen.T0, Codegen.T0, Codegen.T1);
-
-        Codegen.genPush(Codegen.T0);
+    protected int irOpcode() {
+        return IR.SEQ;
     }
 }
 
@@ -2813,16 +5994,8 @@ class NotEqualsNode extends EqualityExpNode {
     }
 
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T0);
-        Codegen.genPop(Codegen.T1);
-
-        Codegen.generate("sne", Codegen.T0, Codegen.T0, Codegen.T1);
-
-        Codegen.genPush(Codegen.T0);
+    protected int irOpcode() {
+        return IR.SNE;
     }
 }
 
@@ -2840,15 +6013,8 @@ class LessNode extends RelationalExpNode {
     }
 
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
-
-        Codegen.generate("slt", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(Codegen.T0);
+    protected int irOpcode() {
+        return IR.SLT;
     }
 }
 
@@ -2866,15 +6032,8 @@ class GreaterNode extends RelationalExpNode {
     }
 
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
-
-        Codegen.generate("sgt", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(Codegen.T0);
+    protected int irOpcode() {
+        return IR.SGT;
     }
 }
 
@@ -2892,15 +6051,8 @@ class LessEqNode extends RelationalExpNode {
     }
 
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
-
-        Codegen.generate("sle", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(Codegen.T0);
+    protected int irOpcode() {
+        return IR.SLE;
     }
 }
 
@@ -2918,14 +6070,7 @@ class GreaterEqNode extends RelationalExpNode {
     }
 
     @Override
-    public void codeGen() {
-        myExp1.codeGen();
-        myExp2.codeGen();
-
-        Codegen.genPop(Codegen.T1);
-        Codegen.genPop(Codegen.T0);
-
-        Codegen.generate("sge", Codegen.T0, Codegen.T0, Codegen.T1);
-        Codegen.genPush(Codegen.T0);
+    protected int irOpcode() {
+        return IR.SGE;
     }
 }
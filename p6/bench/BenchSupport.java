@@ -0,0 +1,162 @@
+import java.io.*;
+
+/**
+ * BenchSupport
+ *
+ * Entry points for the JMH benchmarks in bench/bench. JMH refuses to
+ * generate code for benchmarks in the default package, and classes in a
+ * named package cannot refer to the compiler's classes, so the benchmarks
+ * reach the compiler through these public static methods, which
+ * bench.Compiler looks up reflectively once per trial.
+ *
+ * Each method runs inside the CompilationContext it is given. Contexts made
+ * by {@link newContext} discard generated code.
+ */
+public class BenchSupport {
+	/**
+	 * A context whose code generator writes to a null sink.
+	 */
+	public static Object newContext() {
+		return new CompilationContext(new AsmWriter(Writer.nullWriter()));
+	}
+
+	/**
+	 * Runs the scanner over source, calling next_token until EOF.
+	 * @return the number of tokens scanned
+	 */
+	public static int scan(Object ctx, String source) throws Exception {
+		CompilationContext prev = enter(ctx);
+		try {
+			Yylex scanner = new Yylex(SourceBuffer.of(source),
+			                          (CompilationContext) ctx);
+			int count = 0;
+			while (scanner.next_token().sym != sym.EOF) {
+				count++;
+			}
+			return count;
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
+
+	/**
+	 * Scans source ahead of time for {@link parse}.
+	 */
+	public static Object tokens(Object ctx, String source) throws Exception {
+		CompilationContext prev = enter(ctx);
+		try {
+			return TokenBuffer.scanAll(new Yylex(SourceBuffer.of(source),
+			                                     (CompilationContext) ctx));
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
+
+	/**
+	 * Parses the tokens made by {@link tokens} from the beginning.
+	 * @return the root of the AST
+	 */
+	public static Object parse(Object ctx, Object tokens) throws Exception {
+		CompilationContext prev = enter(ctx);
+		try {
+			TokenBuffer buf = (TokenBuffer) tokens;
+			buf.rewind();
+			return new parser(buf).parse().value;
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
+
+	/**
+	 * Parses and name-analyzes source.
+	 * @return the root of the AST, ready for {@link typeCheck}
+	 */
+	public static Object analyze(Object ctx, String source) throws Exception {
+		ProgramNode program = (ProgramNode) parse(ctx, tokens(ctx, source));
+		CompilationContext prev = enter(ctx);
+		try {
+			program.nameAnalysis();
+			if (ErrMsg.getErr()) {
+				throw new IllegalArgumentException("benchmark program "
+					+ "does not pass name analysis");
+			}
+			return program;
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
+
+	/**
+	 * Type checks an AST made by {@link analyze}.
+	 */
+	public static void typeCheck(Object ctx, Object program) {
+		CompilationContext prev = enter(ctx);
+		try {
+			((ProgramNode) program).typeCheck();
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
+
+	/**
+	 * Generates code for an AST made by {@link analyze} into ctx's sink.
+	 */
+	public static void codeGen(Object ctx, Object program) {
+		CompilationContext prev = enter(ctx);
+		try {
+			((ProgramNode) program).codeGen();
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
+
+	/**
+	 * Compiles source end to end with P6.process, discarding the output.
+	 * @return one of the P6.RESULT_* codes
+	 */
+	public static int process(String source) {
+		P6 instance = new P6();
+		instance.setInput(SourceBuffer.of(source));
+		instance.setOutput(Writer.nullWriter());
+		try {
+			return instance.process();
+		} finally {
+			instance.cleanup();
+		}
+	}
+
+	/**
+	 * A symbol table with depth scopes, each declaring names v<d>_0 ...
+	 * v<d>_<width-1>, where d is 0 for the outermost scope.
+	 */
+	public static Object symTable(Object ctx, int depth, int width)
+			throws Exception {
+		CompilationContext prev = enter(ctx);
+		try {
+			SymTable table = new SymTable();
+			for (int d = 0; d < depth; d++) {
+				if (d != 0) {
+					table.addScope();
+				}
+				for (int k = 0; k < width; k++) {
+					table.addDecl("v" + d + "_" + k, new TSym(new IntType()));
+				}
+			}
+			return table;
+		} finally {
+			CompilationContext.restore(prev);
+		}
+	}
+
+	/**
+	 * SymTable.lookupGlobal on a table made by {@link symTable}.
+	 */
+	public static Object lookupGlobal(Object table, String name)
+			throws Exception {
+		return ((SymTable) table).lookupGlobal(name);
+	}
+
+	private static CompilationContext enter(Object ctx) {
+		return CompilationContext.enter((CompilationContext) ctx);
+	}
+}
@@ -0,0 +1,34 @@
+package bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * ProgramNode.codeGen of a checked program, writing to a null sink.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeGenBench {
+	@Param({"10", "100", "1000"})
+	public int size;
+
+	private Object ctx;
+	private Object program;
+
+	@Setup
+	public void setup() {
+		ctx = Compiler.newContext();
+		program = Compiler.analyze(ctx, Programs.ofSize(size));
+		Compiler.typeCheck(ctx, program);
+	}
+
+	@Benchmark
+	public void codeGen() {
+		Compiler.codeGen(ctx, program);
+	}
+}
@@ -0,0 +1,150 @@
+package bench;
+
+import java.lang.invoke.*;
+
+/**
+ * Compiler
+ *
+ * Typed access to the compiler for the benchmarks. The compiler lives in
+ * the default package, which named packages cannot import, so every call
+ * goes through a MethodHandle on the public static methods of
+ * BenchSupport. The handles are looked up once, when this class is
+ * initialized, and the cost of invoking one is small next to the work each
+ * benchmark measures.
+ */
+final class Compiler {
+	private static final MethodHandle NEW_CONTEXT;
+	private static final MethodHandle SCAN;
+	private static final MethodHandle TOKENS;
+	private static final MethodHandle PARSE;
+	private static final MethodHandle ANALYZE;
+	private static final MethodHandle TYPE_CHECK;
+	private static final MethodHandle CODE_GEN;
+	private static final MethodHandle PROCESS;
+	private static final MethodHandle SYM_TABLE;
+	private static final MethodHandle LOOKUP_GLOBAL;
+
+	static {
+		try {
+			Class<?> c = Class.forName("BenchSupport");
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			MethodType objObj = MethodType.methodType(Object.class,
+			                                          Object.class);
+			NEW_CONTEXT = lookup.findStatic(c, "newContext",
+				MethodType.methodType(Object.class));
+			SCAN = lookup.findStatic(c, "scan",
+				MethodType.methodType(int.class, Object.class, String.class));
+			TOKENS = lookup.findStatic(c, "tokens",
+				objObj.appendParameterTypes(String.class));
+			PARSE = lookup.findStatic(c, "parse",
+				objObj.appendParameterTypes(Object.class));
+			ANALYZE = lookup.findStatic(c, "analyze",
+				objObj.appendParameterTypes(String.class));
+			TYPE_CHECK = lookup.findStatic(c, "typeCheck",
+				MethodType.methodType(void.class, Object.class, Object.class));
+			CODE_GEN = lookup.findStatic(c, "codeGen",
+				MethodType.methodType(void.class, Object.class, Object.class));
+			PROCESS = lookup.findStatic(c, "process",
+				MethodType.methodType(int.class, String.class));
+			SYM_TABLE = lookup.findStatic(c, "symTable",
+				objObj.appendParameterTypes(int.class, int.class));
+			LOOKUP_GLOBAL = lookup.findStatic(c, "lookupGlobal",
+				objObj.appendParameterTypes(String.class));
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	private Compiler() {
+	}
+
+	static Object newContext() {
+		try {
+			return (Object) NEW_CONTEXT.invokeExact();
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static int scan(Object ctx, String source) {
+		try {
+			return (int) SCAN.invokeExact(ctx, source);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object tokens(Object ctx, String source) {
+		try {
+			return (Object) TOKENS.invokeExact(ctx, source);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object parse(Object ctx, Object tokens) {
+		try {
+			return (Object) PARSE.invokeExact(ctx, tokens);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object analyze(Object ctx, String source) {
+		try {
+			return (Object) ANALYZE.invokeExact(ctx, source);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static void typeCheck(Object ctx, Object program) {
+		try {
+			TYPE_CHECK.invokeExact(ctx, program);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static void codeGen(Object ctx, Object program) {
+		try {
+			CODE_GEN.invokeExact(ctx, program);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static int process(String source) {
+		try {
+			return (int) PROCESS.invokeExact(source);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object symTable(Object ctx, int depth, int width) {
+		try {
+			return (Object) SYM_TABLE.invokeExact(ctx, depth, width);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object lookupGlobal(Object table, String name) {
+		try {
+			return (Object) LOOKUP_GLOBAL.invokeExact(table, name);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new RuntimeException(t);
+	}
+}
@@ -0,0 +1,34 @@
+package bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * parser.parse() on input that was scanned ahead of time, so that only
+ * the parser and AST construction are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBench {
+	@Param({"10", "100", "1000"})
+	public int size;
+
+	private Object ctx;
+	private Object tokens;
+
+	@Setup
+	public void setup() {
+		ctx = Compiler.newContext();
+		tokens = Compiler.tokens(ctx, Programs.ofSize(size));
+	}
+
+	@Benchmark
+	public Object parse() {
+		return Compiler.parse(ctx, tokens);
+	}
+}
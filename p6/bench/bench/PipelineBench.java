@@ -0,0 +1,32 @@
+package bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * P6.process end to end: scan, parse, name analysis, type checking and
+ * code generation into a null sink.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBench {
+	@Param({"10", "100", "1000"})
+	public int size;
+
+	private String source;
+
+	@Setup
+	public void setup() {
+		source = Programs.ofSize(size);
+	}
+
+	@Benchmark
+	public int process() {
+		return Compiler.process(source);
+	}
+}
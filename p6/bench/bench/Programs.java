@@ -0,0 +1,49 @@
+package bench;
+
+/**
+ * Programs
+ *
+ * Builds valid Gibberish programs whose size grows with the number of
+ * functions, for the benchmarks' "size" parameter. Every function has the
+ * same shape: arithmetic, an if/else, a while loop, a call to the previous
+ * function and a return.
+ */
+final class Programs {
+	private Programs() {
+	}
+
+	/**
+	 * A program with the given number of functions plus main.
+	 */
+	static String ofSize(int functions) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("int g;\nbool flag;\n\n");
+		for (int i = 0; i < functions; i++) {
+			sb.append("int f").append(i).append("(int a, int b) {\n");
+			sb.append("    int c;\n");
+			sb.append("    c = a * 2 + b - g / 3;\n");
+			sb.append("    if (c > 10 && flag) {\n");
+			sb.append("        c = c - 1;\n");
+			sb.append("    }\n");
+			sb.append("    else {\n");
+			sb.append("        cout << \"small\";\n");
+			sb.append("    }\n");
+			sb.append("    while (c > 0) {\n");
+			sb.append("        c--;\n");
+			sb.append("    }\n");
+			if (i > 0) {
+				sb.append("    c = f").append(i - 1).append("(c, b + 1);\n");
+			}
+			sb.append("    return c + g;\n");
+			sb.append("}\n\n");
+		}
+		sb.append("void main() {\n");
+		sb.append("    g = 3;\n");
+		sb.append("    flag = true;\n");
+		if (functions > 0) {
+			sb.append("    cout << f").append(functions - 1).append("(1, 2);\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,42 @@
+package bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Yylex.next_token throughput. Besides scans/sec, JMH reports the
+ * "tokens" counter as tokens/sec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBench {
+	@Param({"10", "100", "1000"})
+	public int size;
+
+	private String source;
+	private Object ctx;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public long tokens;
+	}
+
+	@Setup
+	public void setup() {
+		source = Programs.ofSize(size);
+		ctx = Compiler.newContext();
+	}
+
+	@Benchmark
+	public int nextToken(Counters counters) {
+		int n = Compiler.scan(ctx, source);
+		counters.tokens += n;
+		return n;
+	}
+}
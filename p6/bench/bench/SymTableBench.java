@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * SymTable.lookupGlobal at various scope depths, for a name declared in
+ * the innermost scope, one declared in the outermost scope, and one that
+ * is not declared at all.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymTableBench {
+	@Param({"1", "4", "16", "64"})
+	public int depth;
+
+	@Param({"8"})
+	public int width;
+
+	private Object table;
+	private String inner;
+	private String outer;
+	private String missing;
+
+	@Setup
+	public void setup() {
+		table = Compiler.symTable(Compiler.newContext(), depth, width);
+		inner = "v" + (depth - 1) + "_0";
+		outer = "v0_" + (width - 1);
+		missing = "undeclared";
+	}
+
+	@Benchmark
+	public Object lookupInnermost() {
+		return Compiler.lookupGlobal(table, inner);
+	}
+
+	@Benchmark
+	public Object lookupOutermost() {
+		return Compiler.lookupGlobal(table, outer);
+	}
+
+	@Benchmark
+	public Object lookupMissing() {
+		return Compiler.lookupGlobal(table, missing);
+	}
+}
@@ -0,0 +1,34 @@
+package bench;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Type checking of a name-analyzed program, i.e. DeclListNode.typeCheck
+ * over all of its declarations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeCheckBench {
+	@Param({"10", "100", "1000"})
+	public int size;
+
+	private Object ctx;
+	private Object program;
+
+	@Setup
+	public void setup() {
+		ctx = Compiler.newContext();
+		program = Compiler.analyze(ctx, Programs.ofSize(size));
+	}
+
+	@Benchmark
+	public void typeCheck() {
+		Compiler.typeCheck(ctx, program);
+	}
+}